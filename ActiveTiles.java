@@ -0,0 +1,280 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Keeps track of which parts of a bounded field are active. The field is cut
+ * into square tiles of TILE_SIZE cells, and for each tile this keeps the
+ * number of occupied cells, the number of animals, and the last time a cell
+ * in or next to it changed. A tile that has not changed looks the same as
+ * before, so passes over the whole field, such as drawing it, can leave the
+ * tile alone.
+ *
+ * Time is counted in generations. Code that wants to know what has changed
+ * calls mark at the end of each of its passes, and asks for the tiles that
+ * changed since the generation it was given. A change to a cell makes its
+ * own tile active, and also any tile holding a neighbour of the cell, so a
+ * dormant tile is woken when something changes next to it.
+ *
+ * A tile is awake if it holds an animal, or a plant that may have a free
+ * neighbour: one that is in the tile or in a tile next to it that is not
+ * full. A tile that is neither awake nor changed is dormant. Nothing in it
+ * can do more than grow older, or die of old age, until something changes
+ * in or next to it, so
+ * ParallelStepEngine lets the species of a part of the field made only of
+ * dormant tiles rest, and leaves them out of the step altogether. Cells
+ * that the terrain blocks count as free, so a tile next to them stays awake.
+ *
+ * The counts may be changed from several threads at once. The generations
+ * written at the same time are all the same, so a lost write does not matter.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class ActiveTiles implements FieldIndex
+{
+    // The number of rows and columns of cells in a tile.
+    public static final int TILE_SIZE = 16;
+    // The shift from a row or column to the row or column of its tile.
+    private static final int TILE_SHIFT = 4;
+
+    // The size of the field.
+    private final int depth, width;
+    // The number of tiles down and across the field.
+    private final int tilesDown, tilesAcross;
+    // The number of occupied cells in each tile.
+    private final AtomicIntegerArray occupied;
+    // The number of animals in each tile.
+    private final AtomicIntegerArray animals;
+    // The generation in which each tile last changed.
+    private final int[] changed;
+    // The current generation.
+    private volatile int generation;
+    // The largest distance from a cell to a neighbour.
+    private int reach;
+    // Whether the field wraps around at its edges.
+    private boolean toroidal;
+
+    /**
+     * Create the tiles for an empty field, all of them active.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public ActiveTiles(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        tilesDown = (depth + TILE_SIZE - 1) >> TILE_SHIFT;
+        tilesAcross = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+        occupied = new AtomicIntegerArray(tilesDown * tilesAcross);
+        animals = new AtomicIntegerArray(tilesDown * tilesAcross);
+        changed = new int[tilesDown * tilesAcross];
+        reach = 1;
+    }
+
+    /**
+     * Set the shape of the neighbourhoods, which decides which tiles are
+     * woken by a change near their edge.
+     * @param reach The largest distance from a cell to a neighbour.
+     * @param toroidal true if the field wraps around at its edges.
+     */
+    public void setNeighbourhood(int reach, boolean toroidal)
+    {
+        this.reach = reach;
+        this.toroidal = toroidal;
+    }
+
+    /**
+     * Update the counts for a changed cell and make the tiles around it active.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param oldSpeciesId The species id before the change.
+     * @param newSpeciesId The species id after the change.
+     */
+    public void cellChanged(int row, int col, int oldSpeciesId, int newSpeciesId)
+    {
+        int tile = (row >> TILE_SHIFT) * tilesAcross + (col >> TILE_SHIFT);
+        if(oldSpeciesId == SpeciesRegistry.EMPTY) {
+            occupied.incrementAndGet(tile);
+        }
+        else if(newSpeciesId == SpeciesRegistry.EMPTY) {
+            occupied.decrementAndGet(tile);
+        }
+        if(SpeciesRegistry.isAnimal(oldSpeciesId)) {
+            animals.decrementAndGet(tile);
+        }
+        if(SpeciesRegistry.isAnimal(newSpeciesId)) {
+            animals.incrementAndGet(tile);
+        }
+
+        // The neighbours of the cell lie in at most two rows and two columns of tiles.
+        int top = tileOf(row - reach, depth);
+        int bottom = tileOf(row + reach, depth);
+        int left = tileOf(col - reach, width);
+        int right = tileOf(col + reach, width);
+        int now = generation;
+        touch(top * tilesAcross + left, now);
+        touch(top * tilesAcross + right, now);
+        touch(bottom * tilesAcross + left, now);
+        touch(bottom * tilesAcross + right, now);
+    }
+
+    /**
+     * Set every count to zero and make every tile active.
+     */
+    public void cleared()
+    {
+        for(int tile = 0; tile < occupied.length(); tile++) {
+            occupied.set(tile, 0);
+            animals.set(tile, 0);
+        }
+        Arrays.fill(changed, generation);
+    }
+
+    /**
+     * End the current generation and start the next one.
+     * @return The new generation. Tiles that change from now on are active
+     *         since this generation.
+     */
+    public synchronized int mark()
+    {
+        generation++;
+        return generation;
+    }
+
+    /**
+     * @param tileRow The row of the tile.
+     * @param tileCol The column of the tile.
+     * @param since A generation given by mark, or 0 for the start.
+     * @return true if a cell in or next to the tile has changed since that generation.
+     */
+    public boolean isActive(int tileRow, int tileCol, int since)
+    {
+        return changed[tileRow * tilesAcross + tileCol] >= since;
+    }
+
+    /**
+     * @param tileRow The row of the tile.
+     * @param tileCol The column of the tile.
+     * @return true if the tile holds an animal, or a plant that may have a
+     *         free neighbour.
+     */
+    public boolean isAwake(int tileRow, int tileCol)
+    {
+        int tile = tileRow * tilesAcross + tileCol;
+        if(animals.get(tile) > 0) {
+            return true;
+        }
+        if(occupied.get(tile) == 0) {
+            return false;
+        }
+        // Only animals and plants are placed, so the tile holds plants.
+        for(int dr = -1; dr <= 1; dr++) {
+            for(int dc = -1; dc <= 1; dc++) {
+                int row = tileRow + dr;
+                int col = tileCol + dc;
+                if(toroidal) {
+                    row = Math.floorMod(row, tilesDown);
+                    col = Math.floorMod(col, tilesAcross);
+                }
+                else if(row < 0 || row >= tilesDown || col < 0 || col >= tilesAcross) {
+                    continue;
+                }
+                if(occupied.get(row * tilesAcross + col) < cellsIn(row, col)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether every tile overlapping a rectangle of cells is dormant.
+     * @param top The first row of the rectangle.
+     * @param left The first column of the rectangle.
+     * @param bottom One past the last row of the rectangle.
+     * @param right One past the last column of the rectangle.
+     * @param since A generation given by mark.
+     * @return true if none of the tiles is awake or has changed since that generation.
+     */
+    public boolean isDormant(int top, int left, int bottom, int right, int since)
+    {
+        int lastRow = Math.min(bottom - 1, depth - 1) >> TILE_SHIFT;
+        int lastCol = Math.min(right - 1, width - 1) >> TILE_SHIFT;
+        for(int tileRow = top >> TILE_SHIFT; tileRow <= lastRow; tileRow++) {
+            for(int tileCol = left >> TILE_SHIFT; tileCol <= lastCol; tileCol++) {
+                if(isActive(tileRow, tileCol, since) || isAwake(tileRow, tileCol)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param tileRow The row of the tile.
+     * @param tileCol The column of the tile.
+     * @return The number of occupied cells in the tile.
+     */
+    public int getOccupied(int tileRow, int tileCol)
+    {
+        return occupied.get(tileRow * tilesAcross + tileCol);
+    }
+
+    /**
+     * @return The number of tiles down the field.
+     */
+    public int getTilesDown()
+    {
+        return tilesDown;
+    }
+
+    /**
+     * @return The number of tiles across the field.
+     */
+    public int getTilesAcross()
+    {
+        return tilesAcross;
+    }
+
+    /**
+     * Find the tile row or column of a cell row or column that may be just
+     * off the field, wrapping it round or keeping it on the field.
+     * @param position The row or column.
+     * @param size The depth or width of the field.
+     * @return The row or column of the tile.
+     */
+    private int tileOf(int position, int size)
+    {
+        if(position < 0) {
+            position = toroidal ? position + size : 0;
+        }
+        else if(position >= size) {
+            position = toroidal ? position - size : size - 1;
+        }
+        return position >> TILE_SHIFT;
+    }
+
+    /**
+     * @param tileRow The row of the tile.
+     * @param tileCol The column of the tile.
+     * @return The number of cells in the tile, fewer at the bottom and right edges.
+     */
+    private int cellsIn(int tileRow, int tileCol)
+    {
+        int rows = Math.min(TILE_SIZE, depth - (tileRow << TILE_SHIFT));
+        int cols = Math.min(TILE_SIZE, width - (tileCol << TILE_SHIFT));
+        return rows * cols;
+    }
+
+    /**
+     * Record that a tile has changed in a generation.
+     * @param tile The index of the tile.
+     * @param now The generation.
+     */
+    private void touch(int tile, int now)
+    {
+        if(changed[tile] != now) {
+            changed[tile] = now;
+        }
+    }
+}
@@ -9,18 +9,14 @@ import java.util.Random;
  */
 public abstract class Animal extends Species
 {
-    //The animal's gender, Male or Female
-    private String gender;
-    //If the animal is infected with a disease.
-    private boolean infected;
     //The food level of the animal
-    protected int foodLevel;
-    //A shared random number generator
-    private static final Random rand = Randomizer.getRandom();
+    private int foodLevel;
     //Chance of an animal being randomly infected by disease
     private static final double RANDOM_INFECTION_CHANCE = 0.005;
     //Chance of an animal infected with a disease spreading it to other animals.
     private static final double SPREAD_INFECTION_CHANCE = 0.01;
+    //The step at which the animal catches a disease by chance, drawn when it is born.
+    private long infectionStep;
 
     /**
      * Create a new animal at location in field.
@@ -33,7 +29,11 @@ public abstract class Animal extends Species
         super(field, location);
         setLocation(location);
         setGender();
-        foodLevel = getINITIAL_FOOD_LEVEL();
+        setFlag(EntityStore.DIURNAL, getParameters().isDiurnal());
+        setFoodLevel(getParameters().getInitialFoodLevel());
+        //Drawn once rather than every step, with the same odds in each step.
+        infectionStep = Time.getStep() + 1
+                        + Randomizer.geometric(getRandom(Randomizer.INFECTION), RANDOM_INFECTION_CHANCE);
     }
 
     /**
@@ -45,24 +45,29 @@ public abstract class Animal extends Species
      */
     public void act(List<Species> newAnimals)
     {
-        incrementAge();
+        checkAge();
         randomlyContractInfection();
-        infectAdjacentAnimals();
+        //Look at the neighbourhood once, if the animal is going to do anything with it.
+        NeighbourhoodView neighbourhood = null;
+        if(isAlive() && (isInfected() || isAwake(Time.isDay()))) {
+            neighbourhood = NeighbourhoodView.shared().scan(getField(), getLocation(), getEdibleSpeciesSet(), this);
+        }
+        infectAdjacentAnimals(neighbourhood);
         incrementHunger();
         //The animal can only breed and find food when it is awake and still alive.
         if(isAlive() && (isAwake(Time.isDay()))) {
             //give birth to any new animals
-            giveBirth(newAnimals);
+            giveBirth(newAnimals, neighbourhood);
             if(canFindFood()) {
                 // Move towards a source of food if found.
-                Location newLocation = findFood();
-                if(newLocation == null) {
+                long newCell = findFood(neighbourhood);
+                if(newCell == Location.NONE) {
                     // No food found - try to move to a free location.
-                    newLocation = getField().freeAdjacentLocation(getLocation());
+                    newCell = chooseMove(neighbourhood);
                 }
                 // See if it was possible to move.
-                if(newLocation != null) {
-                    setLocation(newLocation);
+                if(newCell != Location.NONE) {
+                    setLocation(newCell);
                 }
                 else {
                     // Overcrowding.
@@ -72,6 +77,67 @@ public abstract class Animal extends Species
         }
     }
 
+    /**
+     * Decide what the animal will do this step, in the same way as act,
+     * but without changing the field or any other species. The animal ages,
+     * may catch a disease and gets hungrier straight away; everything else
+     * is added to the intents.
+     * @param intents The buffer to add the intents to.
+     */
+    public void plan(IntentBuffer intents)
+    {
+        if(getAge() > getParameters().getMaxAge()) {
+            intents.add(IntentBuffer.DIE, this);
+            return;
+        }
+        randomlyContractInfection();
+        boolean awake = isAwake(Time.isDay());
+        NeighbourhoodView neighbourhood = null;
+        if(isInfected() || awake) {
+            neighbourhood = NeighbourhoodView.shared().scan(getField(), getLocation(), getEdibleSpeciesSet(), this);
+        }
+        if(isInfected()) {
+            Random rand = getRandom(Randomizer.CONTAGION);
+            for(int i = nextContagion(rand, -1); i < neighbourhood.getAnimalCount(); i = nextContagion(rand, i)) {
+                intents.add(IntentBuffer.INFECT, this, Location.NONE, neighbourhood.getAnimal(i));
+            }
+            intents.add(IntentBuffer.DISEASE, this);
+        }
+        if(!awake) {
+            return;
+        }
+        setFoodLevel(getFoodLevel() - 1);
+        if(getFoodLevel() <= 0) {
+            intents.add(IntentBuffer.DIE, this);
+            return;
+        }
+        if(isFemale()) {
+            int births = breed(neighbourhood);
+            for(int b = 0; b < births; b++) {
+                Location free = neighbourhood.takeFree();
+                if(free == null) {
+                    break;
+                }
+                intents.add(IntentBuffer.BIRTH, this, free.getKey(), null);
+            }
+        }
+        if(canFindFood()) {
+            if(neighbourhood.getEdibleCount() > 0) {
+                intents.add(IntentBuffer.EAT, this, neighbourhood.getEdibleKey(0), neighbourhood.getEdible(0));
+            }
+            else {
+                long newCell = chooseMove(neighbourhood);
+                if(newCell != Location.NONE) {
+                    intents.add(IntentBuffer.MOVE, this, newCell, null);
+                }
+                else {
+                    // Overcrowding.
+                    intents.add(IntentBuffer.DIE, this);
+                }
+            }
+        }
+    }
+
     /**
      * Incrementing the animal's hunger by decreasing it's food level
      * If foodLevel reaches 0, then the animal dies of starvation.
@@ -79,8 +145,8 @@ public abstract class Animal extends Species
     protected void incrementHunger()
     {
         if(isAwake(Time.isDay())){
-            foodLevel--;
-            if(foodLevel <= 0) {
+            setFoodLevel(getFoodLevel() - 1);
+            if(getFoodLevel() <= 0) {
                 setDead();
             }
         }
@@ -91,20 +157,22 @@ public abstract class Animal extends Species
      * Check whether or not this animal is to give birth at this step.
      * New births will be made into free adjacent locations.
      * @param newAnimals A list to return newly born animals.
+     * @param neighbourhood The animal's neighbourhood.
      */
-    protected void giveBirth(List<Species> newAnimals)
+    protected void giveBirth(List<Species> newAnimals, NeighbourhoodView neighbourhood)
     {
         //Only females can give birth
-        if(gender.equals("female")) {
-            //New animals are born into adjacent locations
-            //Get a list of adjacent free locations
-            Field field = getField();
-            List<Location> free = field.getFreeAdjacentLocations(getLocation());
+        if(isFemale()) {
             //Get the number of new animals to add to the field.
-            int births = breed();
-            for(int b = 0; b < births && free.size() > 0; b++) {
-                Location location = free.remove(0);
-                Animal child = newAnimalObject(false, field, location);
+            int births = breed(neighbourhood);
+            //New animals are born into adjacent free locations
+            Field field = getField();
+            for(int b = 0; b < births; b++) {
+                Location free = neighbourhood.takeFree();
+                if(free == null) {
+                    break;
+                }
+                Animal child = newAnimalObject(false, field, free);
                 newAnimals.add(child);
             }
         }
@@ -114,13 +182,16 @@ public abstract class Animal extends Species
     /**
      * Generate a number representing the number of births,
      * if the animal can breed.
+     * @param neighbourhood The animal's neighbourhood.
      * @return The number of births (may be zero).
      */
-    protected int breed()
+    protected int breed(NeighbourhoodView neighbourhood)
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= getBREEDING_PROBABILITY()) {
-            births = rand.nextInt(getMAX_LITTER_SIZE()) + 1;
+        SpeciesParameters parameters = getParameters();
+        Random rand = getRandom(Randomizer.BREED);
+        if(canBreed(neighbourhood) && rand.nextDouble() <= parameters.getBreedingProbability()) {
+            births = rand.nextInt(parameters.getMaxLitterSize()) + 1;
         }
         return births;
     }
@@ -130,59 +201,58 @@ public abstract class Animal extends Species
      * They are old enough to breed
      * There is an animal in an adjacent spot of the same species
      * The two animals have the same gender.
+     * @param neighbourhood The animal's neighbourhood.
      * @return Whether or not the animal can breed
      */
-    private boolean canBreed()
+    private boolean canBreed(NeighbourhoodView neighbourhood)
     {
-        boolean sameSpecies = false;
-        boolean oppositeGender = false;
-
-        if(age < getBREEDING_AGE()) {
+        if(getAge() < getParameters().getBreedingAge()) {
             return false;
-        }else{
-            //Get a list of adjacent locations.
-            Field field = getField();
-            List<Location> adjacentLocations = field.adjacentAnimals(getLocation());
-            //Get the animal at the current location
-            Object animal = field.getObjectAt(getLocation());
-
-            for (Location location : adjacentLocations) {
-                //select the species from the adjacent location
-                Object partner = field.getObjectAt(location);
-                if(partner != null) {
-                    //Check if the animal in the adjacent location is of the same species.
-                    sameSpecies = partner.getClass().equals(animal.getClass());
-                    //Check if the animals are opposite gender (males can only breed with females)
-                    Animal part = (Animal) partner;
-                    oppositeGender = !gender.equals(part.gender);
-                }
-            }
         }
-        return sameSpecies && oppositeGender;
+        //The last adjacent animal visited decides whether there is a partner.
+        int adjacent = neighbourhood.getAnimalCount();
+        return adjacent > 0 && neighbourhood.isMate(adjacent - 1);
     }
 
     /**
      * The animal will look for other species to eat in adjacent locations.
-     * @return The location where the animal found food, or null if it didn't find any food to eat.
+     * @param neighbourhood The animal's neighbourhood.
+     * @return The packed key of the cell where the animal found food,
+     *         or Location.NONE if it didn't find any food to eat.
      */
-    protected Location findFood()
+    protected long findFood(NeighbourhoodView neighbourhood)
     {
-        Field field = getField();
-        //create a list of adjancent locations
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        for (Location where : adjacent) {
-            Object species = field.getObjectAt(where);
-            if (species != null) {
-                String speciesString = species.getClass().getName();
-                //Check if the species is a possible food source for the animal
-                if (getEDIBLE_SPECIES().contains(speciesString)) {
-                    eat((Species) species);
-                    //return the location of where the species was eaten.
-                    return where;
-                }
-            }
+        //eat the first adjacent species this animal can eat
+        if(neighbourhood.getEdibleCount() > 0) {
+            eat(neighbourhood.getEdible(0));
+            //return the location of where the species was eaten.
+            return neighbourhood.getEdibleKey(0);
+        }
+        return Location.NONE;
+    }
+
+    /**
+     * Choose a free adjacent location to move to when there is no food to eat.
+     * @param neighbourhood The animal's neighbourhood.
+     * @return The packed key of the free location, or Location.NONE if there is none.
+     */
+    protected long chooseMove(NeighbourhoodView neighbourhood)
+    {
+        Location free = neighbourhood.takeFree();
+        if(free != null) {
+            return free.getKey();
         }
-        return null;  
+        return Location.NONE;
+    }
+
+    /**
+     * Return the species ids of everything in this animal's diet,
+     * as a set with bit n set for species id n.
+     * @return The set of species ids this animal can eat.
+     */
+    protected long getEdibleSpeciesSet()
+    {
+        return FoodWeb.getDiet(getSpeciesId());
     }
 
     /**
@@ -191,7 +261,7 @@ public abstract class Animal extends Species
      */
     protected boolean canFindFood()
     {
-        return !getHUNTING_VISIBILITY_REQUIRED() || !Simulator.weather.isFoggy();
+        return !getParameters().isHuntingVisibilityRequired() || !SimulationEngine.weather.isFoggy();
     }
 
     /**
@@ -201,9 +271,10 @@ public abstract class Animal extends Species
      */
     protected void eat(Species target)
     {
-        if (target.isAlive() && target.isEDIBLE()) {
+        SpeciesParameters food = target.getParameters();
+        if (target.isAlive() && food.isEdible()) {
             //Add the food value of the species that has just been eaten to the animal's foodLevel
-            foodLevel += target.getFOOD_VALUE();
+            setFoodLevel(getFoodLevel() + food.getFoodValue());
             target.setDead();
         }
     }
@@ -213,17 +284,24 @@ public abstract class Animal extends Species
      */
     private void setGender()
     {
-        String[] genders = {"male", "female"};
-        gender = genders[rand.nextInt(2)];
+        setFlag(EntityStore.FEMALE, getRandom(Randomizer.GENDER).nextInt(2) == 1);
     }
 
     /**
      * Return the animal's gender
-     * @return The animal's gender
+     * @return The animal's gender, "male" or "female".
      */
     protected String getGender()
     {
-        return gender;
+        return isFemale() ? "female" : "male";
+    }
+
+    /**
+     * @return true if the animal is female.
+     */
+    protected boolean isFemale()
+    {
+        return hasFlag(EntityStore.FEMALE);
     }
 
     /**
@@ -231,66 +309,193 @@ public abstract class Animal extends Species
      */
     protected boolean isAwake(boolean isDay)
     {
-        return (isDIURNAL() == isDay);
+        return (hasFlag(EntityStore.DIURNAL) == isDay);
     }
 
     /**
      * @return If the animal is infected with disease or not.
      */
     protected boolean isInfected(){
-        return infected;
+        return hasFlag(EntityStore.INFECTED);
     }
 
     /**
-     * Infect the animal with disease.
+     * Infect the animal with disease. An infected animal acts every step,
+     * so a sleeping animal is woken for the next step.
      */
     protected void setInfected(){
-        if(!infected){
-            infected = true;
+        if(!isInfected()){
+            catchDisease();
+            wakeEarly();
+        }
+    }
+
+    /**
+     * Note that the animal has the disease.
+     */
+    private void catchDisease()
+    {
+        setFlag(EntityStore.INFECTED, true);
+    }
+
+    /**
+     * @return The step at which the animal catches a disease by chance.
+     */
+    private long getInfectionStep()
+    {
+        EntityStore store = getStore();
+        return store != null ? store.getEventStep(getRow()) : infectionStep;
+    }
+
+    /**
+     * @return The food level of the animal.
+     */
+    protected int getFoodLevel()
+    {
+        EntityStore store = getStore();
+        return store != null ? store.getFoodLevel(getRow()) : foodLevel;
+    }
+
+    /**
+     * @param foodLevel The new food level of the animal.
+     */
+    protected void setFoodLevel(int foodLevel)
+    {
+        EntityStore store = getStore();
+        if(store != null) {
+            store.setFoodLevel(getRow(), foodLevel);
+        }
+        else {
+            this.foodLevel = foodLevel;
+        }
+    }
+
+    /**
+     * Write the animal's state to a row of a store.
+     * @param store The store.
+     * @param row The row.
+     */
+    protected void saveState(EntityStore store, int row)
+    {
+        super.saveState(store, row);
+        store.setFoodLevel(row, foodLevel);
+        store.setEventStep(row, infectionStep);
+    }
+
+    /**
+     * Read the animal's state back from a row of a store.
+     * @param store The store.
+     * @param row The row.
+     */
+    protected void loadState(EntityStore store, int row)
+    {
+        super.loadState(store, row);
+        foodLevel = store.getFoodLevel(row);
+        infectionStep = store.getEventStep(row);
+    }
+
+    /**
+     * Work out whether the animal can skip the steps after the current one,
+     * and if so until when. An animal that is healthy and will be asleep in the
+     * next step has nothing to do until it wakes up, dies of old age, or
+     * catches a disease by chance in the step drawn for that at its birth.
+     * @return The step in which the animal must act again, or ACTIVE if it
+     *         must act in the next step.
+     */
+    protected long rest()
+    {
+        long now = Time.getStep();
+        if(!isAlive() || isInfected()) {
+            return ACTIVE;
+        }
+        long wake = Time.nextStepWhen(hasFlag(EntityStore.DIURNAL));
+        if(wake == now + 1) {
+            return ACTIVE;
+        }
+        // Dies of old age in the step its age passes the maximum.
+        long oldAge = now + getParameters().getMaxAge() - getAge() + 1;
+        return Math.min(wake, Math.min(oldAge, getInfectionStep()));
+    }
+
+    /**
+     * Wake the animal up to act in the given step. It has caught a
+     * disease if it slept past the step drawn for that.
+     * @param step The step the animal acts in next.
+     */
+    protected void wakeUp(long step)
+    {
+        super.wakeUp(step);
+        if(getInfectionStep() <= step) {
+            catchDisease();
         }
     }
 
     /**
      * Animal's have a small chance of being randomly infected with a disease, if they get infected
-     * then they will have the disease.
+     * then they will have the disease. The step it happens in is drawn when the animal is born.
      */
     protected void randomlyContractInfection(){
-        if(rand.nextDouble() <= RANDOM_INFECTION_CHANCE){
-            infected = true;
+        if(isAlive() && Time.getStep() >= getInfectionStep()){
+            catchDisease();
         } 
     }
 
     /**
      * An animal infected with disease will have a small chance of infecting animals that are
      * located in adjacent locations in the field.
+     * @param neighbourhood The animal's neighbourhood.
      */
-    protected void infectAdjacentAnimals(){
+    protected void infectAdjacentAnimals(NeighbourhoodView neighbourhood){
         //Animals can only spread disease if they are infected.
         if(isInfected() && isAlive()){
-            //The simulation field
-            Field field = getField();
-            //create a list of adjancent locations
-            List<Location> adjacent = field.adjacentAnimals(getLocation());
-            for (Location location : adjacent) {
-                Object adjacentAnimal = field.getObjectAt(location);
-                if(adjacentAnimal != null) {
-                    Animal a = (Animal) adjacentAnimal;
-                    //Infect the other animal
-                    if(rand.nextDouble() <= SPREAD_INFECTION_CHANCE){
-                        a.setInfected();
-                    }
-                }
-            }
-            //Decrease the number of steps left before the animal dies of disease
-            Simulator.disease.decrementStepsRemaining();
-            if(Simulator.disease.getDaysRemaning() == 0){
-                setDead();
-                Simulator.disease.incrementDiseaseDeaths();
+            Random rand = getRandom(Randomizer.CONTAGION);
+            //visit the adjacent animals that catch the disease
+            for(int i = nextContagion(rand, -1); i < neighbourhood.getAnimalCount(); i = nextContagion(rand, i)) {
+                //Infect the other animal
+                neighbourhood.getAnimal(i).setInfected();
             }
+            sufferDisease();
         }
     } 
 
-    //Abstract methods
+    /**
+     * Skip to the next neighbour that catches the disease, drawing the gap
+     * rather than a number per neighbour; each neighbour still catches it
+     * with the chance of spreading.
+     * @param rand The random numbers to draw from.
+     * @param previous The index of the last neighbour that caught it, or -1.
+     * @return The index of the next neighbour that catches it, which may be
+     *         past the last neighbour.
+     */
+    private static int nextContagion(Random rand, int previous)
+    {
+        long next = previous + 1 + Randomizer.geometric(rand, SPREAD_INFECTION_CHANCE);
+        return (int) Math.min(next, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Let the disease run for another step. The animal dies of it if its time is up.
+     */
+    protected void sufferDisease()
+    {
+        //Decrease the number of steps left before the animal dies of disease
+        if(SimulationEngine.disease.progress()){
+            setDead();
+        }
+    }
+
+    /**
+     * Create a newborn animal of the same kind, aged 0.
+     * @param location The free location to create it in.
+     * @return The newborn animal.
+     */
+    protected Species createOffspring(Location location)
+    {
+        return newAnimalObject(false, getField(), location);
+    }
+
+    //Abstract methods. The constants they return are the defaults for the
+    //animal's SpeciesParameters, which is what the simulation reads.
     /**
      * Creates a new animal object
      * @param randomAge True if the animal is created with a random age,
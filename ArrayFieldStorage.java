@@ -0,0 +1,149 @@
+/**
+ * The original field storage: a two dimensional array holding
+ * a reference to the occupant of each cell.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class ArrayFieldStorage implements FieldStorage
+{
+    // The depth and width of the grid.
+    private int depth, width;
+    // Storage for the animals.
+    private Object[][] field;
+    // The shared location of each cell, created when first asked for.
+    private Location[][] locations;
+
+    /**
+     * Create storage for a grid of the given size.
+     * @param depth The depth of the grid.
+     * @param width The width of the grid.
+     */
+    public ArrayFieldStorage(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        field = new Object[depth][width];
+        locations = new Location[depth][width];
+    }
+
+    /**
+     * @return The depth of the grid.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the grid.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return true, the grid has a fixed size.
+     */
+    public boolean isBounded()
+    {
+        return true;
+    }
+
+    /**
+     * @return true, each cell is kept separately.
+     */
+    public boolean isTileSafe()
+    {
+        return true;
+    }
+
+    /**
+     * Return the object in the given cell, if any.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The object in the cell, or null if it is empty.
+     */
+    public Object getObjectAt(int row, int col)
+    {
+        return field[row][col];
+    }
+
+    /**
+     * Return the species id of the object in the given cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The species id, or SpeciesRegistry.EMPTY if the cell is empty.
+     */
+    public int getSpeciesIdAt(int row, int col)
+    {
+        return SpeciesRegistry.idOf(field[row][col]);
+    }
+
+    /**
+     * Return the shared location object for the given cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The location of the cell.
+     */
+    public Location getLocation(int row, int col)
+    {
+        Location location = locations[row][col];
+        if(location == null) {
+            location = new Location(row, col);
+            locations[row][col] = location;
+        }
+        return location;
+    }
+
+    /**
+     * Store an object in the given cell.
+     * @param occupant The object to store.
+     * @param speciesId The species id of the object (not stored).
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    public void place(Object occupant, int speciesId, int row, int col)
+    {
+        field[row][col] = occupant;
+    }
+
+    /**
+     * Empty the given cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    public void clear(int row, int col)
+    {
+        field[row][col] = null;
+    }
+
+    /**
+     * Empty every cell.
+     */
+    public void clear()
+    {
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                field[row][col] = null;
+            }
+        }
+    }
+
+    /**
+     * Pass every occupied cell to the visitor.
+     * @param visitor The visitor to receive the cells.
+     */
+    public void forEachOccupied(CellVisitor visitor)
+    {
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                Object occupant = field[row][col];
+                if(occupant != null) {
+                    visitor.visit(row, col, SpeciesRegistry.idOf(occupant), occupant);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Runs the simulation from the command line, without a window, and reports
+ * how fast it went. For example:
+ *
+ *     java BatchRunner -depth 1000 -width 1000 -seed 42 -steps 500 -engine parallel
+ *
+ * Options:
+ *   -depth n     The depth of the field (default 135).
+ *   -width n     The width of the field (default 200).
+ *   -seed n      The random seed (default 1111).
+ *   -steps n     The number of steps to run (default 500).
+ *   -engine e    How to step the species: serial, parallel, intent, scheduled,
+ *                multirate, batch or typed (default serial).
+ *   -compare e   Run again with another engine afterwards, from the same
+ *                seed, and print how their speeds compare.
+ *   -rounds n    The number of times to run, taking turns with the engine
+ *                compared to, if any; the fastest run of each counts (default 1).
+ *   -plant-interval n  The steps between the turns of a plant, for the
+ *                multirate engine (default 1).
+ *   -terrain t   A terrain file to load, or "generate" for a generated terrain.
+ *   -species f   A parameter file to load, see SpeciesParameters (default
+ *                species.properties, if it exists).
+ *
+ * The run stops early if the simulation stops being viable. At the end the
+ * population of each species is printed, to compare engines that should
+ * give the same results on average, such as serial and typed, or exactly
+ * the same results, such as serial and batch, or serial and multirate with
+ * a plant interval of 1. For example, to see
+ * whether stepping the species one kind at a time is faster:
+ *
+ *     java BatchRunner -depth 500 -width 500 -steps 300 -engine typed -compare serial -rounds 3
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class BatchRunner
+{
+    // The defaults for the options.
+    private static final int DEFAULT_DEPTH = 135;
+    private static final int DEFAULT_WIDTH = 200;
+    private static final long DEFAULT_SEED = 1111;
+    private static final int DEFAULT_STEPS = 500;
+    private static final int DEFAULT_PLANT_INTERVAL = 1;
+    private static final int DEFAULT_ROUNDS = 1;
+
+    /**
+     * Run a simulation as the command line asks, and print the steps per second.
+     * @param args The command line options.
+     */
+    public static void main(String[] args)
+    {
+        int depth = DEFAULT_DEPTH;
+        int width = DEFAULT_WIDTH;
+        long seed = DEFAULT_SEED;
+        int steps = DEFAULT_STEPS;
+        int plantInterval = DEFAULT_PLANT_INTERVAL;
+        String engineName = "serial";
+        String compareName = null;
+        int rounds = DEFAULT_ROUNDS;
+        String terrainName = null;
+        String parameterFile = null;
+        try {
+            for(int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if(i + 1 == args.length) {
+                    usage("Missing value for " + option);
+                }
+                String value = args[++i];
+                switch(option) {
+                    case "-depth":
+                        depth = Integer.parseInt(value);
+                        break;
+                    case "-width":
+                        width = Integer.parseInt(value);
+                        break;
+                    case "-seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "-steps":
+                        steps = Integer.parseInt(value);
+                        break;
+                    case "-plant-interval":
+                        plantInterval = Integer.parseInt(value);
+                        break;
+                    case "-engine":
+                        engineName = value;
+                        break;
+                    case "-compare":
+                        compareName = value;
+                        break;
+                    case "-rounds":
+                        rounds = Integer.parseInt(value);
+                        break;
+                    case "-terrain":
+                        terrainName = value;
+                        break;
+                    case "-species":
+                        parameterFile = value;
+                        break;
+                    default:
+                        usage("Unknown option " + option);
+                }
+            }
+        }
+        catch(NumberFormatException e) {
+            usage("Not a number: " + e.getMessage());
+        }
+        if(depth <= 0 || width <= 0 || steps < 0 || plantInterval <= 0 || rounds <= 0) {
+            usage("The depth, width, plant interval and rounds must be greater than zero,"
+                  + " and the steps at least zero.");
+        }
+
+        if(parameterFile != null) {
+            try {
+                SpeciesParameters.load(parameterFile);
+            }
+            catch(IOException e) {
+                usage("Cannot read species parameters: " + e.getMessage());
+            }
+        }
+        Terrain terrain = null;
+        if("generate".equals(terrainName)) {
+            terrain = Terrain.generate(depth, width, new Random(seed));
+        }
+        else if(terrainName != null) {
+            try {
+                terrain = Terrain.load(terrainName);
+            }
+            catch(IOException e) {
+                usage("Cannot read terrain: " + e.getMessage());
+            }
+            if(terrain.getDepth() != depth || terrain.getWidth() != width) {
+                usage("The terrain is " + terrain.getDepth() + " x " + terrain.getWidth()
+                      + " but the field is " + depth + " x " + width);
+            }
+        }
+
+        // Take turns, so neither engine has the JVM warmed up for it by the other.
+        double speed = 0;
+        double compareSpeed = 0;
+        for(int round = 0; round < rounds; round++) {
+            speed = Math.max(speed, run(engineName, depth, width, seed, steps, plantInterval, terrain));
+            if(compareName != null) {
+                compareSpeed = Math.max(compareSpeed,
+                                        run(compareName, depth, width, seed, steps, plantInterval, terrain));
+            }
+        }
+        if(compareName != null) {
+            System.out.println(engineName + " ran at " + String.format("%.2f", speed / compareSpeed)
+                               + " times the speed of " + compareName + ", at best "
+                               + String.format("%.1f", speed) + " against "
+                               + String.format("%.1f", compareSpeed) + " steps/sec");
+        }
+    }
+
+    /**
+     * Run a simulation from the start with the given engine, and print how
+     * fast it went and the populations at the end.
+     * @param engineName The name of the engine, e.g. "serial".
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param seed The random seed.
+     * @param steps The number of steps to run.
+     * @param plantInterval The steps between the turns of a plant, for the multirate engine.
+     * @param terrain The terrain, or null for grass only.
+     * @return The steps per second.
+     */
+    private static double run(String engineName, int depth, int width, long seed, int steps,
+                              int plantInterval, Terrain terrain)
+    {
+        Randomizer.setSeed(seed);
+        SimulationEngine engine = new SimulationEngine(depth, width, terrain);
+        switch(engineName) {
+            case "serial":
+                break;
+            case "parallel":
+                engine.setParallel(true);
+                break;
+            case "intent":
+                engine.setIntentModel(true);
+                break;
+            case "scheduled":
+                engine.setScheduled(true);
+                break;
+            case "multirate":
+                engine.setPlantInterval(plantInterval);
+                break;
+            case "batch":
+                engine.setBatch(true);
+                break;
+            case "typed":
+                engine.setTypeBatched(true);
+                break;
+            default:
+                usage("Unknown engine " + engineName);
+        }
+
+        System.out.println("Field " + depth + " x " + width + ", seed " + seed + ", "
+                           + engineName + " engine, " + engine.getPopulation() + " animals and plants");
+        long start = System.nanoTime();
+        int run = engine.run(steps);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("Ran " + run + " steps in " + String.format("%.3f", seconds) + " s: "
+                           + String.format("%.1f", run / seconds) + " steps/sec");
+        System.out.println("Population " + engine.getPopulation() + ", disease deaths "
+                           + engine.getDisease().getDiseaseDeaths());
+        int infected = EntityStore.ALIVE | EntityStore.INFECTED;
+        System.out.println("Infected animals " + engine.count(infected, infected) + ", of which female "
+                           + engine.count(infected | EntityStore.FEMALE, infected | EntityStore.FEMALE));
+        StringBuilder populations = new StringBuilder();
+        for(int id = 1; id <= SpeciesRegistry.getMaxId(); id++) {
+            populations.append(id == 1 ? "" : ", ")
+                       .append(SpeciesRegistry.getSpeciesClass(id).getName()).append(' ')
+                       .append(engine.getField().getPopulation(id));
+        }
+        System.out.println(populations);
+        return run / seconds;
+    }
+
+    /**
+     * Print what went wrong and how to use the runner, and stop.
+     * @param message What went wrong.
+     */
+    private static void usage(String message)
+    {
+        System.err.println(message);
+        System.err.println("Usage: java BatchRunner [-depth n] [-width n] [-seed n] [-steps n]"
+                           + " [-engine serial|parallel|intent|scheduled|multirate|batch|typed] [-compare e]"
+                           + " [-rounds n] [-plant-interval n] [-terrain file|generate] [-species file]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Receive the occupied cells of a field, one at a time,
+ * when the field is scanned with Field.forEachOccupied.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public interface CellVisitor
+{
+    /**
+     * Visit one occupied cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param speciesId The species id of the occupant.
+     * @param occupant The object in the cell.
+     */
+    void visit(int row, int col, int speciesId, Object occupant);
+}
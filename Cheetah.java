@@ -29,6 +29,8 @@ public class Cheetah extends Predator
     private static final boolean DIURNAL = true;
     //A list of species that are part of the cheetah's diet.
     private static final List<String> EDIBLE_SPECIES = Arrays.asList("Gazelle", "Zebra");
+    //How far away the cheetah can see prey to stalk it.
+    private static final int PERCEPTION_RADIUS = 8;
     // A shared random number generator to control breeding.
     private static final Random rand = Randomizer.getRandom();
 
@@ -45,12 +47,12 @@ public class Cheetah extends Predator
     {
         super(field, location);
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE/2);
-            foodLevel = rand.nextInt(INITIAL_FOOD_LEVEL);
+            setAge(rand.nextInt(getParameters().getMaxAge()/2));
+            setFoodLevel(rand.nextInt(getParameters().getInitialFoodLevel()));
         }
         else {
-            age = 0;
-            foodLevel = INITIAL_FOOD_LEVEL;
+            setAge(0);
+            setFoodLevel(getParameters().getInitialFoodLevel());
         }
     }
 
@@ -123,6 +125,14 @@ public class Cheetah extends Predator
         return DIURNAL;
     }
 
+    /**
+     * @return How far away the cheetah can see prey.
+     */
+    protected int getPERCEPTION_RADIUS()
+    {
+        return PERCEPTION_RADIUS;
+    }
+
     /**
      * @return The list of species that the cheetah can eat.
      */
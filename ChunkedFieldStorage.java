@@ -0,0 +1,336 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Field storage for very large or unbounded fields that are mostly empty.
+ * The grid is split into square chunks that are only created when something
+ * is first placed in them, and are released again as soon as they become
+ * empty. Memory therefore grows with the occupied area of the field rather
+ * than with its declared size, and scans only visit chunks that exist.
+ *
+ * An unbounded storage accepts any row and column, including negative ones,
+ * and reports a depth and width of zero.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class ChunkedFieldStorage implements FieldStorage
+{
+    // The number of bits in a chunk coordinate; chunks are 64x64 cells.
+    private static final int CHUNK_BITS = 6;
+    // The width and depth of a chunk.
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    // Mask for the position of a cell within its chunk.
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // The number of released chunks kept for reuse.
+    private static final int MAX_SPARE_CHUNKS = 16;
+
+    // The depth and width of the field, zero if unbounded.
+    private final int depth, width;
+    // The chunks that exist, keyed by the packed chunk row and column.
+    private final LongMap<Chunk> chunks;
+    // Released chunks, kept so chunks on a busy border are not reallocated every step.
+    private final List<Chunk> spareChunks;
+    // The chunk used last, as most accesses fall in the same chunk.
+    private Chunk lastChunk;
+
+    /**
+     * Create storage for a bounded field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public ChunkedFieldStorage(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        chunks = new LongMap<>();
+        spareChunks = new ArrayList<>();
+    }
+
+    /**
+     * Create storage for an unbounded field.
+     */
+    public ChunkedFieldStorage()
+    {
+        this(0, 0);
+    }
+
+    /**
+     * @return The depth of the field, or zero if it is unbounded.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the field, or zero if it is unbounded.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return true if the field has a fixed size.
+     */
+    public boolean isBounded()
+    {
+        return depth > 0 && width > 0;
+    }
+
+    /**
+     * @return false, chunks are created and released in a map shared by every cell.
+     */
+    public boolean isTileSafe()
+    {
+        return false;
+    }
+
+    /**
+     * @return The number of chunks currently allocated.
+     */
+    public int getChunkCount()
+    {
+        return chunks.size();
+    }
+
+    /**
+     * Return the object in the given cell, if any.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The object in the cell, or null if it is empty.
+     */
+    public Object getObjectAt(int row, int col)
+    {
+        Chunk chunk = findChunk(row, col);
+        if(chunk == null) {
+            return null;
+        }
+        return chunk.occupants[cellIndex(row, col)];
+    }
+
+    /**
+     * Return the species id of the object in the given cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The species id, or SpeciesRegistry.EMPTY if the cell is empty.
+     */
+    public int getSpeciesIdAt(int row, int col)
+    {
+        Chunk chunk = findChunk(row, col);
+        if(chunk == null) {
+            return SpeciesRegistry.EMPTY;
+        }
+        return chunk.speciesIds[cellIndex(row, col)];
+    }
+
+    /**
+     * Return the shared location object for the given cell.
+     * Cells in chunks that do not exist get a new location each time,
+     * so asking for a location never allocates a chunk.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The location of the cell.
+     */
+    public Location getLocation(int row, int col)
+    {
+        Chunk chunk = findChunk(row, col);
+        if(chunk == null) {
+            return new Location(row, col);
+        }
+        int index = cellIndex(row, col);
+        Location location = chunk.locations[index];
+        if(location == null) {
+            location = new Location(row, col);
+            chunk.locations[index] = location;
+        }
+        return location;
+    }
+
+    /**
+     * Store an object in the given cell, creating its chunk if needed.
+     * @param occupant The object to store.
+     * @param speciesId The species id of the object.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    public void place(Object occupant, int speciesId, int row, int col)
+    {
+        if(occupant == null) {
+            clear(row, col);
+            return;
+        }
+        Chunk chunk = findChunk(row, col);
+        if(chunk == null) {
+            chunk = createChunk(row, col);
+        }
+        int index = cellIndex(row, col);
+        if(chunk.occupants[index] == null) {
+            chunk.count++;
+        }
+        chunk.occupants[index] = occupant;
+        chunk.speciesIds[index] = (byte) speciesId;
+    }
+
+    /**
+     * Empty the given cell, releasing its chunk if it becomes empty.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    public void clear(int row, int col)
+    {
+        Chunk chunk = findChunk(row, col);
+        if(chunk == null) {
+            return;
+        }
+        int index = cellIndex(row, col);
+        if(chunk.occupants[index] != null) {
+            chunk.occupants[index] = null;
+            chunk.speciesIds[index] = SpeciesRegistry.EMPTY;
+            chunk.count--;
+            if(chunk.count == 0) {
+                releaseChunk(chunk);
+            }
+        }
+    }
+
+    /**
+     * Empty every cell. Only the chunks that exist are touched.
+     */
+    public void clear()
+    {
+        for(int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk chunk = chunks.valueAt(slot);
+            if(chunk != null && spareChunks.size() < MAX_SPARE_CHUNKS) {
+                chunk.reset();
+                spareChunks.add(chunk);
+            }
+        }
+        chunks.clear();
+        lastChunk = null;
+    }
+
+    /**
+     * Pass every occupied cell to the visitor. Only the chunks
+     * that exist are visited, in no particular order.
+     * @param visitor The visitor to receive the cells.
+     */
+    public void forEachOccupied(CellVisitor visitor)
+    {
+        for(int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk chunk = chunks.valueAt(slot);
+            if(chunk != null) {
+                int baseRow = chunk.chunkRow << CHUNK_BITS;
+                int baseCol = chunk.chunkCol << CHUNK_BITS;
+                for(int index = 0; index < CHUNK_SIZE * CHUNK_SIZE; index++) {
+                    int id = chunk.speciesIds[index];
+                    if(id != SpeciesRegistry.EMPTY) {
+                        visitor.visit(baseRow + (index >> CHUNK_BITS), baseCol + (index & CHUNK_MASK),
+                                      id, chunk.occupants[index]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the chunk holding a cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The chunk, or null if it does not exist.
+     */
+    private Chunk findChunk(int row, int col)
+    {
+        int chunkRow = row >> CHUNK_BITS;
+        int chunkCol = col >> CHUNK_BITS;
+        Chunk chunk = lastChunk;
+        if(chunk != null && chunk.chunkRow == chunkRow && chunk.chunkCol == chunkCol) {
+            return chunk;
+        }
+        chunk = chunks.get(Location.pack(chunkRow, chunkCol));
+        if(chunk != null) {
+            lastChunk = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Create the chunk holding a cell, reusing a released chunk if there is one.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The new chunk.
+     */
+    private Chunk createChunk(int row, int col)
+    {
+        Chunk chunk;
+        if(spareChunks.isEmpty()) {
+            chunk = new Chunk();
+        }
+        else {
+            chunk = spareChunks.remove(spareChunks.size() - 1);
+        }
+        chunk.chunkRow = row >> CHUNK_BITS;
+        chunk.chunkCol = col >> CHUNK_BITS;
+        chunks.put(Location.pack(chunk.chunkRow, chunk.chunkCol), chunk);
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    /**
+     * Release an empty chunk.
+     * @param chunk The chunk to release.
+     */
+    private void releaseChunk(Chunk chunk)
+    {
+        chunks.remove(Location.pack(chunk.chunkRow, chunk.chunkCol));
+        if(lastChunk == chunk) {
+            lastChunk = null;
+        }
+        if(spareChunks.size() < MAX_SPARE_CHUNKS) {
+            chunk.reset();
+            spareChunks.add(chunk);
+        }
+    }
+
+    /**
+     * Return the position of a cell within its chunk.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The index of the cell in the chunk's arrays.
+     */
+    private static int cellIndex(int row, int col)
+    {
+        return ((row & CHUNK_MASK) << CHUNK_BITS) | (col & CHUNK_MASK);
+    }
+
+    /**
+     * One square tile of the field.
+     */
+    private static class Chunk
+    {
+        // The chunk's coordinates, in chunks.
+        int chunkRow, chunkCol;
+        // The species id of the occupant of each cell.
+        final byte[] speciesIds = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        // The occupant of each cell.
+        final Object[] occupants = new Object[CHUNK_SIZE * CHUNK_SIZE];
+        // The shared location of each cell, created when first asked for.
+        final Location[] locations = new Location[CHUNK_SIZE * CHUNK_SIZE];
+        // The number of occupied cells.
+        int count;
+
+        /**
+         * Forget the chunk's position and contents so it can be reused.
+         * The shared locations belong to the old position, so they are dropped.
+         */
+        void reset()
+        {
+            Arrays.fill(speciesIds, (byte) SpeciesRegistry.EMPTY);
+            Arrays.fill(occupants, null);
+            Arrays.fill(locations, null);
+            count = 0;
+        }
+    }
+}
@@ -50,6 +50,15 @@ public class Counter
         count++;
     }
     
+    /**
+     * Set the current count.
+     * @param count The new count.
+     */
+    public void setCount(int count)
+    {
+        this.count = count;
+    }
+
     /**
      * Reset the current count to zero.
      */
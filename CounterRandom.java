@@ -0,0 +1,120 @@
+import java.util.Random;
+
+/**
+ * A random number generator whose numbers are worked out from a key and a
+ * counter, rather than from the numbers before them, using the Philox4x32-10
+ * function of Salmon et al., "Parallel random numbers: as easy as 1, 2, 3".
+ *
+ * A stream of numbers is picked with reset, by a seed, a step, an id (such as
+ * the packed key of a cell) and a purpose (such as Randomizer.BREED). The
+ * numbers of a stream depend only on those four values, so they come
+ * out the same whichever thread draws them and in whatever order the streams
+ * are used. Each stream has room for 2^34 numbers.
+ *
+ * Because it extends Random, a stream can be used wherever a Random is. It is
+ * not safe to use one stream from several threads at once.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class CounterRandom extends Random
+{
+    // The version of the serialised form, as Random is Serializable.
+    private static final long serialVersionUID = 1L;
+
+    // The multipliers and key steps of Philox4x32.
+    private static final long M0 = 0xD2511F53L;
+    private static final long M1 = 0xCD9E8D57L;
+    private static final int W0 = 0x9E3779B9;
+    private static final int W1 = 0xBB67AE85;
+    // The number of rounds.
+    private static final int ROUNDS = 10;
+
+    // The key of the current stream, made from the seed and purpose.
+    private int key0, key1;
+    // The counter of the current stream, apart from the block number.
+    private int step, id0, id1;
+    // The number of the next block of four numbers.
+    private int block;
+    // The current block, and how many of its numbers have been used.
+    private final int[] numbers = new int[4];
+    private int used;
+
+    /**
+     * Create a generator. It must be reset to a stream before use.
+     */
+    public CounterRandom()
+    {
+        super(0);
+    }
+
+    /**
+     * Start a stream of numbers.
+     * @param seed The seed of the run.
+     * @param step The step of the simulation.
+     * @param id The id of whatever the numbers are for, e.g. the packed key of a cell.
+     * @param purpose What the numbers are for, e.g. Randomizer.BREED.
+     * @return This generator.
+     */
+    public CounterRandom reset(long seed, long step, long id, int purpose)
+    {
+        key0 = (int) seed;
+        key1 = (int) (seed >>> 32) ^ purpose * W0;
+        this.step = (int) step;
+        id0 = (int) id;
+        id1 = (int) (id >>> 32);
+        block = 0;
+        used = numbers.length;
+        return this;
+    }
+
+    /**
+     * Has no effect. The numbers are picked by reset instead.
+     * @param seed Ignored.
+     */
+    public void setSeed(long seed)
+    {
+    }
+
+    /**
+     * Return the next random bits of the stream.
+     * @param bits The number of bits wanted, at most 32.
+     * @return The bits, in the low end of an int.
+     */
+    protected int next(int bits)
+    {
+        if(used == numbers.length) {
+            philox(block++);
+            used = 0;
+        }
+        return numbers[used++] >>> (32 - bits);
+    }
+
+    /**
+     * Work out one block of four numbers of the current stream.
+     * @param counter The number of the block.
+     */
+    private void philox(int counter)
+    {
+        int c0 = counter;
+        int c1 = step;
+        int c2 = id0;
+        int c3 = id1;
+        int k0 = key0;
+        int k1 = key1;
+        for(int round = 0; round < ROUNDS; round++) {
+            long p0 = M0 * (c0 & 0xFFFFFFFFL);
+            long p1 = M1 * (c2 & 0xFFFFFFFFL);
+            c0 = (int) (p1 >>> 32) ^ c1 ^ k0;
+            c1 = (int) p1;
+            c2 = (int) (p0 >>> 32) ^ c3 ^ k1;
+            c3 = (int) p0;
+            k0 += W0;
+            k1 += W1;
+        }
+        numbers[0] = c0;
+        numbers[1] = c1;
+        numbers[2] = c2;
+        numbers[3] = c3;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Checks that the ParallelStepEngine gives the same results however many
+ * threads it runs on. The simulation is run twice from the same seed, once
+ * on a pool of one thread and once on a pool of several, and what is in
+ * every cell of the field at the end is compared. For example:
+ *
+ *     java DeterminismCheck -depth 1000 -width 1000 -steps 60 -threads 4
+ *
+ * Options:
+ *   -depth n     The depth of the field (default 400).
+ *   -width n     The width of the field (default 400).
+ *   -seed n      The random seed (default 1111).
+ *   -steps n     The number of steps to run (default 60).
+ *   -threads n   The number of threads of the second run (default 4).
+ *
+ * It prints a fingerprint of each run and exits with status 1 if they differ.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class DeterminismCheck
+{
+    // The defaults for the options.
+    private static final int DEFAULT_DEPTH = 400;
+    private static final int DEFAULT_WIDTH = 400;
+    private static final long DEFAULT_SEED = 1111;
+    private static final int DEFAULT_STEPS = 60;
+    private static final int DEFAULT_THREADS = 4;
+
+    /**
+     * Run the simulation on one thread and on several, and compare the results.
+     * @param args The command line options.
+     */
+    public static void main(String[] args)
+    {
+        int depth = DEFAULT_DEPTH;
+        int width = DEFAULT_WIDTH;
+        long seed = DEFAULT_SEED;
+        int steps = DEFAULT_STEPS;
+        int threads = DEFAULT_THREADS;
+        try {
+            for(int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if(i + 1 == args.length) {
+                    usage("Missing value for " + option);
+                }
+                String value = args[++i];
+                switch(option) {
+                    case "-depth":
+                        depth = Integer.parseInt(value);
+                        break;
+                    case "-width":
+                        width = Integer.parseInt(value);
+                        break;
+                    case "-seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "-steps":
+                        steps = Integer.parseInt(value);
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    default:
+                        usage("Unknown option " + option);
+                }
+            }
+        }
+        catch(NumberFormatException e) {
+            usage("Not a number: " + e.getMessage());
+        }
+        if(depth <= 0 || width <= 0 || steps < 0 || threads <= 0) {
+            usage("The depth, width and threads must be greater than zero, and the steps at least zero.");
+        }
+
+        long one = run(depth, width, seed, steps, 1);
+        long several = run(depth, width, seed, steps, threads);
+        if(one != several) {
+            System.out.println("DIFFERENT: the results on 1 and " + threads + " threads are not the same");
+            System.exit(1);
+        }
+        System.out.println("Same results on 1 and " + threads + " threads");
+    }
+
+    /**
+     * Run a simulation from the start with the parallel engine on a pool
+     * of its own, and print a fingerprint of the field at the end.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param seed The random seed.
+     * @param steps The number of steps to run.
+     * @param threads The number of threads.
+     * @return The fingerprint.
+     */
+    private static long run(int depth, int width, long seed, int steps, int threads)
+    {
+        Randomizer.setSeed(seed);
+        SimulationEngine engine = new SimulationEngine(depth, width);
+        engine.setParallelism(threads);
+        int run = engine.run(steps);
+        long fingerprint = fingerprint(engine.getField()) * 31 + engine.getDisease().getDiseaseDeaths();
+        System.out.println(threads + (threads == 1 ? " thread: " : " threads: ") + run + " steps, population "
+                           + engine.getPopulation() + ", fingerprint " + Long.toHexString(fingerprint));
+        return fingerprint;
+    }
+
+    /**
+     * Work out a fingerprint of what is in every cell of a field. Cells are
+     * added up, so the fingerprint does not depend on the order they are
+     * visited in.
+     * @param field The field.
+     * @return The fingerprint.
+     */
+    private static long fingerprint(Field field)
+    {
+        final long[] sum = new long[1];
+        field.forEachOccupied(new CellVisitor() {
+            public void visit(int row, int col, int speciesId, Object occupant)
+            {
+                long cell = Location.pack(row, col) * 0x9E3779B97F4A7C15L + speciesId;
+                sum[0] += cell ^ (cell >>> 29);
+            }
+        });
+        return sum[0];
+    }
+
+    /**
+     * Print what went wrong and how to use the check, and stop.
+     * @param message What went wrong.
+     */
+    private static void usage(String message)
+    {
+        System.err.println(message);
+        System.err.println("Usage: java DeterminismCheck [-depth n] [-width n] [-seed n] [-steps n] [-threads n]");
+        System.exit(1);
+    }
+}
@@ -2,6 +2,7 @@
  * A class representing a disease in the simulation.
  * Animals can be infected with disease and spread it to other animals.
  * Once an animal is infected, they have a limited number of steps left before they die.
+ * Infected animals may act on several threads at once, so the counts are synchronized.
  * @author Colin Billhardt and Thom Treebus
  * @version 2021.03.03
  */
@@ -22,30 +23,58 @@ public class Disease
     /**
      * @return The number of steps the animal has left before they die of disease
      */
-    public int getDaysRemaning(){
+    public synchronized int getDaysRemaning(){
         return stepsRemaining;
     }
 
     /**
      * Reduce the number of steps the infected animal has left to live.
      */
-    public void decrementStepsRemaining(){
+    public synchronized void decrementStepsRemaining(){
         if(stepsRemaining > 0){
             stepsRemaining--;
         }
     }
 
+    /**
+     * Let the disease run for another step in an infected animal: count down
+     * the steps left, and if none are left count a death. This is done under
+     * one lock, so of the animals counting down at the same time exactly one
+     * is the first to find no steps left.
+     * @return true if the animal dies of the disease.
+     */
+    public synchronized boolean progress(){
+        if(stepsRemaining > 0){
+            stepsRemaining--;
+        }
+        if(stepsRemaining == 0){
+            diseaseDeaths++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the steps left are still being counted down. While they are,
+     * which animal dies first depends on the order the animals act in;
+     * once none are left every infected animal dies in its next step.
+     * @return true if there are steps left.
+     */
+    public synchronized boolean isCountingDown(){
+        return stepsRemaining > 0;
+    }
+
     /**
      * Increment the number of deaths caused by disease by 1.
      */
-    public void incrementDiseaseDeaths(){
+    public synchronized void incrementDiseaseDeaths(){
         diseaseDeaths++;
     }
 
     /**
      * @return The number of disease deaths.
      */
-    public int getDiseaseDeaths(){
+    public synchronized int getDiseaseDeaths(){
         return diseaseDeaths;
     }
 }
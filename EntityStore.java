@@ -0,0 +1,355 @@
+import java.util.Arrays;
+
+/**
+ * The state of the species in a SpeciesPool that is looked at in every step,
+ * kept in parallel arrays of primitives with one row per slot of the pool:
+ * a word of flags, the species id, the step of birth, the
+ * rainy steps at birth (for plants), the food level (for animals) and the
+ * step of the next rare event, which is the step an animal catches a disease
+ * by chance or the step a plant next spreads.
+ *
+ * While a species is in a pool its state lives in the row for its slot,
+ * and the species object reads and writes it there. The rows of a whole
+ * step can then be looked through without touching any species objects,
+ * see BatchStepEngine. A species that is not in a pool keeps its state
+ * in its own fields, as before.
+ *
+ * A species finds its row through a handle that it is given when it is
+ * added, and that stays the same while the rows are moved about. So when
+ * the pool drops the dead species and moves the rest down, only the rows
+ * and the handles' entries are changed, not the species.
+ *
+ * What a row's species is like, such as its maximum age, is found from its
+ * species id in SpeciesParameters.
+ *
+ * Different rows may be changed from several threads at once.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class EntityStore
+{
+    // The flags of a row. An animal's sex and whether it is awake by day
+    // are set when it is born, and never change.
+    public static final int ALIVE = 1;
+    public static final int INFECTED = 2;
+    public static final int FEMALE = 4;
+    public static final int DIURNAL = 8;
+
+    // The flags of each row.
+    private int[] flags;
+    // The species id of each row.
+    private byte[] speciesIds;
+    // The step of birth of each row.
+    private long[] birthSteps;
+    // The rainy steps there had been at birth, for plants.
+    private long[] birthRains;
+    // The food level, for animals.
+    private int[] foodLevels;
+    // The step of the next rare event.
+    private long[] eventSteps;
+    // The handle of the species each row belongs to.
+    private int[] handles;
+
+    // The row of each handle, or -1 for a free handle.
+    private int[] rows;
+    // The handles given back, to be given out again.
+    private int[] freeHandles;
+    // The number of handles given back.
+    private int freeCount;
+    // The number of handles ever given out.
+    private int handleCount;
+
+    /**
+     * Create a store with room for the given number of rows.
+     * @param capacity The number of rows.
+     */
+    public EntityStore(int capacity)
+    {
+        flags = new int[capacity];
+        speciesIds = new byte[capacity];
+        birthSteps = new long[capacity];
+        birthRains = new long[capacity];
+        foodLevels = new int[capacity];
+        eventSteps = new long[capacity];
+        handles = new int[capacity];
+        rows = new int[capacity];
+        freeHandles = new int[capacity];
+    }
+
+    /**
+     * Make room for at least the given number of rows.
+     * @param capacity The number of rows.
+     */
+    public void ensureCapacity(int capacity)
+    {
+        if(capacity > flags.length) {
+            int length = Math.max(capacity, flags.length * 2);
+            flags = Arrays.copyOf(flags, length);
+            speciesIds = Arrays.copyOf(speciesIds, length);
+            birthSteps = Arrays.copyOf(birthSteps, length);
+            birthRains = Arrays.copyOf(birthRains, length);
+            foodLevels = Arrays.copyOf(foodLevels, length);
+            eventSteps = Arrays.copyOf(eventSteps, length);
+            handles = Arrays.copyOf(handles, length);
+        }
+    }
+
+    /**
+     * Give out a handle for a species whose state is put in a row.
+     * @param row The row.
+     * @return The handle.
+     */
+    public int addHandle(int row)
+    {
+        int handle;
+        if(freeCount > 0) {
+            handle = freeHandles[--freeCount];
+        }
+        else {
+            if(handleCount == rows.length) {
+                rows = Arrays.copyOf(rows, handleCount * 2);
+                freeHandles = Arrays.copyOf(freeHandles, handleCount * 2);
+            }
+            handle = handleCount++;
+        }
+        rows[handle] = row;
+        handles[row] = handle;
+        return handle;
+    }
+
+    /**
+     * Take back a handle whose species has left the store.
+     * @param handle The handle.
+     */
+    public void removeHandle(int handle)
+    {
+        rows[handle] = -1;
+        freeHandles[freeCount++] = handle;
+    }
+
+    /**
+     * @param handle A handle given out by addHandle.
+     * @return The row of the handle's species.
+     */
+    public int getRow(int handle)
+    {
+        return rows[handle];
+    }
+
+    /**
+     * A row may still hold a copy of a species that has moved on to another
+     * row; only the row it moved to is its own.
+     * @param row The row.
+     * @return true if the row is the row of the species it belongs to.
+     */
+    public boolean isOwned(int row)
+    {
+        return rows[handles[row]] == row;
+    }
+
+    /**
+     * Copy a row to another row.
+     * @param from The row to copy.
+     * @param to The row to copy it to.
+     */
+    public void move(int from, int to)
+    {
+        if(isOwned(from)) {
+            rows[handles[from]] = to;
+        }
+        handles[to] = handles[from];
+        flags[to] = flags[from];
+        speciesIds[to] = speciesIds[from];
+        birthSteps[to] = birthSteps[from];
+        birthRains[to] = birthRains[from];
+        foodLevels[to] = foodLevels[from];
+        eventSteps[to] = eventSteps[from];
+    }
+
+    /**
+     * Copy a run of rows along, as System.arraycopy does.
+     * @param from The first row to copy.
+     * @param to The row to copy it to.
+     * @param length The number of rows.
+     */
+    public void moveRange(int from, int to, int length)
+    {
+        // Go the same way as the copy, so a row's new place is not taken
+        // for the place of a row that has not been looked at yet.
+        if(to > from) {
+            for(int row = from + length - 1; row >= from; row--) {
+                if(isOwned(row)) {
+                    rows[handles[row]] = row + to - from;
+                }
+            }
+        }
+        else {
+            for(int row = from; row < from + length; row++) {
+                if(isOwned(row)) {
+                    rows[handles[row]] = row + to - from;
+                }
+            }
+        }
+        System.arraycopy(handles, from, handles, to, length);
+        System.arraycopy(flags, from, flags, to, length);
+        System.arraycopy(speciesIds, from, speciesIds, to, length);
+        System.arraycopy(birthSteps, from, birthSteps, to, length);
+        System.arraycopy(birthRains, from, birthRains, to, length);
+        System.arraycopy(foodLevels, from, foodLevels, to, length);
+        System.arraycopy(eventSteps, from, eventSteps, to, length);
+    }
+
+    /**
+     * Count the rows whose flags, picked out by a mask, are as given.
+     * For example count(size, ALIVE | INFECTED | FEMALE, ALIVE | INFECTED | FEMALE)
+     * counts the living infected females.
+     * @param rows The number of rows to look at, from row 0.
+     * @param mask The flags to look at.
+     * @param value The flags wanted, among those in the mask.
+     * @return The number of rows.
+     */
+    public int count(int rows, int mask, int value)
+    {
+        int count = 0;
+        for(int row = 0; row < rows; row++) {
+            if((flags[row] & mask) == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param row The row.
+     * @return The flags.
+     */
+    public int getFlags(int row)
+    {
+        return flags[row];
+    }
+
+    /**
+     * @param row The row.
+     * @param flags The flags.
+     */
+    public void setFlags(int row, int flags)
+    {
+        this.flags[row] = flags;
+    }
+
+    /**
+     * @param row The row.
+     * @param flag The flag, e.g. ALIVE.
+     * @return true if the flag is set.
+     */
+    public boolean hasFlag(int row, int flag)
+    {
+        return (flags[row] & flag) != 0;
+    }
+
+    /**
+     * @param row The row.
+     * @param flag The flag, e.g. ALIVE.
+     * @param set true to set the flag, false to clear it.
+     */
+    public void setFlag(int row, int flag, boolean set)
+    {
+        if(set) {
+            flags[row] |= flag;
+        }
+        else {
+            flags[row] &= ~flag;
+        }
+    }
+
+    /**
+     * @param row The row.
+     * @return The species id.
+     */
+    public int getSpeciesId(int row)
+    {
+        return speciesIds[row];
+    }
+
+    /**
+     * @param row The row.
+     * @param speciesId The species id.
+     */
+    public void setSpeciesId(int row, int speciesId)
+    {
+        speciesIds[row] = (byte) speciesId;
+    }
+
+    /**
+     * @param row The row.
+     * @return The step of birth.
+     */
+    public long getBirthStep(int row)
+    {
+        return birthSteps[row];
+    }
+
+    /**
+     * @param row The row.
+     * @param step The step of birth.
+     */
+    public void setBirthStep(int row, long step)
+    {
+        birthSteps[row] = step;
+    }
+
+    /**
+     * @param row The row.
+     * @return The rainy steps there had been at birth.
+     */
+    public long getBirthRain(int row)
+    {
+        return birthRains[row];
+    }
+
+    /**
+     * @param row The row.
+     * @param rain The rainy steps there had been at birth.
+     */
+    public void setBirthRain(int row, long rain)
+    {
+        birthRains[row] = rain;
+    }
+
+    /**
+     * @param row The row.
+     * @return The food level.
+     */
+    public int getFoodLevel(int row)
+    {
+        return foodLevels[row];
+    }
+
+    /**
+     * @param row The row.
+     * @param foodLevel The food level.
+     */
+    public void setFoodLevel(int row, int foodLevel)
+    {
+        foodLevels[row] = foodLevel;
+    }
+
+    /**
+     * @param row The row.
+     * @return The step of the next rare event.
+     */
+    public long getEventStep(int row)
+    {
+        return eventSteps[row];
+    }
+
+    /**
+     * @param row The row.
+     * @param step The step of the next rare event.
+     */
+    public void setEventStep(int row, long step)
+    {
+        eventSteps[row] = step;
+    }
+}
@@ -1,36 +1,293 @@
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 
 /**
  * Represent a rectangular grid of field positions.
  * Each position is able to store a single animal.
+ * A field built on a ChunkedFieldStorage may instead be unbounded,
+ * in which case its depth and width are zero.
  *
  * @author Colin Billhardt and Thom Treebus
  * @version 2021.03.03
  */
 public class Field
 {
-    // A random number generator for providing random locations.
-    private static final Random rand = Randomizer.getRandom();
-    
+    // Fields with more cells than this do not keep occupancy bitboards.
+    private static final long MAX_BITBOARD_AREA = 16000000L;
+
     // The depth and width of the field.
     private int depth, width;
     // Storage for the animals.
-    private Object[][] field;
+    private FieldStorage storage;
+    // The shape of the neighbourhood of each location.
+    private Topology topology;
+    // The topology compiled for this field's size.
+    private NeighbourTable neighbourTable;
+    // Indexes that are told about every change to the field.
+    private volatile FieldIndex[] indexes;
+    // Per-species occupancy bits, or null if the field is too large or unbounded.
+    private OccupancyBitboard bitboard;
+    // Whether the bitboard can answer neighbourhood queries for the current topology.
+    private boolean bitboardNeighbourhoods;
+    // The ground under the field, or null if it is all grass.
+    private Terrain terrain;
+    // The number of each species, in total and within rectangles.
+    private RegionCounts counts;
+    // The tiles that have changed, or null if the field is too large or unbounded.
+    private ActiveTiles activeTiles;
+    // The spatial index for ranged queries, created when first asked for.
+    private volatile SpatialIndex spatialIndex;
+    // Whether the field is frozen, see setFrozen.
+    private boolean frozen;
 
     /**
      * Represent a field of the given dimensions.
+     * The field is stored in flat primitive arrays.
      * @param depth The depth of the field.
      * @param width The width of the field.
      */
     public Field(int depth, int width)
     {
-        this.depth = depth;
-        this.width = width;
-        field = new Object[depth][width];
+        this(new FlatFieldStorage(depth, width));
+    }
+
+    /**
+     * Represent a field kept in the given storage.
+     * @param storage The storage for the cells of the field.
+     */
+    public Field(FieldStorage storage)
+    {
+        this(storage, Topology.moore(false));
+    }
+
+    /**
+     * Represent a field kept in the given storage, with the given
+     * neighbourhood shape.
+     * @param storage The storage for the cells of the field.
+     * @param topology The neighbourhood of each location.
+     */
+    public Field(FieldStorage storage, Topology topology)
+    {
+        this.storage = storage;
+        this.depth = storage.getDepth();
+        this.width = storage.getWidth();
+        indexes = new FieldIndex[0];
+        counts = new RegionCounts(storage);
+        addIndex(counts);
+        if(storage.isBounded() && (long) depth * width <= MAX_BITBOARD_AREA) {
+            bitboard = new OccupancyBitboard(depth, width, topology.isToroidal());
+            addIndex(bitboard);
+            activeTiles = new ActiveTiles(depth, width);
+            addIndex(activeTiles);
+        }
+        setTopology(topology);
+    }
+
+    /**
+     * Add an index that is to be told about every change to the field.
+     * The field should be empty when an index is added.
+     * @param index The index to add.
+     */
+    public synchronized void addIndex(FieldIndex index)
+    {
+        FieldIndex[] more = new FieldIndex[indexes.length + 1];
+        System.arraycopy(indexes, 0, more, 0, indexes.length);
+        more[indexes.length] = index;
+        indexes = more;
+    }
+
+    /**
+     * Stop telling an index about changes to the field.
+     * @param index The index to remove.
+     */
+    public synchronized void removeIndex(FieldIndex index)
+    {
+        for(int i = 0; i < indexes.length; i++) {
+            if(indexes[i] == index) {
+                FieldIndex[] fewer = new FieldIndex[indexes.length - 1];
+                System.arraycopy(indexes, 0, fewer, 0, i);
+                System.arraycopy(indexes, i + 1, fewer, i, indexes.length - i - 1);
+                indexes = fewer;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Change the neighbourhood of each location. The topology is
+     * compiled into neighbour tables for this field straight away.
+     * @param topology The new topology.
+     */
+    public void setTopology(Topology topology)
+    {
+        this.topology = topology;
+        neighbourTable = topology.compile(depth, width, storage.isBounded());
+        if(activeTiles != null) {
+            activeTiles.setNeighbourhood(topology.getReach(), topology.isToroidal());
+        }
+        bitboardNeighbourhoods = bitboard != null && topology.isMoore() && depth >= 3 && width >= 3
+                                 && bitboard.isToroidal() == topology.isToroidal();
+    }
+
+    /**
+     * Return the occupancy bitboard, if it can be used to answer
+     * neighbourhood queries for the field's current topology.
+     * @return The bitboard, or null if neighbourhoods must be looked up cell by cell.
+     */
+    public OccupancyBitboard getNeighbourhoodBitboard()
+    {
+        return bitboardNeighbourhoods ? bitboard : null;
+    }
+
+    /**
+     * Count the members of a species in the field.
+     * The counts are kept up to date as the field changes.
+     * @param speciesId The species id.
+     * @return The number of cells holding that species.
+     */
+    public int getPopulation(int speciesId)
+    {
+        return counts.getTotal(speciesId);
+    }
+
+    /**
+     * Count the members of a species inside a rectangle of the field.
+     * Parts of the rectangle outside the field are ignored.
+     * @param speciesId The species id.
+     * @param top The first row of the rectangle.
+     * @param left The first column of the rectangle.
+     * @param bottom The last row of the rectangle.
+     * @param right The last column of the rectangle.
+     * @return The number of cells in the rectangle holding that species.
+     */
+    public int getPopulation(int speciesId, int top, int left, int bottom, int right)
+    {
+        if(storage.isBounded()) {
+            return counts.count(speciesId, top, left, bottom, right);
+        }
+        // An unbounded field has no trees, so look at each cell.
+        int count = 0;
+        for(int row = top; row <= bottom; row++) {
+            for(int col = left; col <= right; col++) {
+                if(storage.getSpeciesIdAt(row, col) == speciesId) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the spatial index of the field, for finding things further away
+     * than the adjacent locations. The index is built from the current
+     * contents of the field the first time it is asked for, and is kept up to
+     * date from then on.
+     * @return The spatial index.
+     */
+    public SpatialIndex getSpatialIndex()
+    {
+        if(spatialIndex == null) {
+            createSpatialIndex();
+        }
+        return spatialIndex;
+    }
+
+    /**
+     * Build the spatial index, unless another thread has just done so.
+     */
+    private synchronized void createSpatialIndex()
+    {
+        if(spatialIndex == null) {
+            final SpatialIndex index = new SpatialIndex();
+            forEachOccupied(new CellVisitor() {
+                public void visit(int row, int col, int id, Object occupant)
+                {
+                    index.cellChanged(row, col, SpeciesRegistry.EMPTY, id);
+                }
+            });
+            addIndex(index);
+            index.setFrozen(frozen);
+            spatialIndex = index;
+        }
+    }
+
+    /**
+     * Say whether the field is frozen. A frozen field must not be changed
+     * until it is unfrozen, and in return its spatial index is searched
+     * without locks. An engine freezes the field while several threads only
+     * look at it.
+     * @param frozen true to freeze the field, false to allow changes again.
+     */
+    public synchronized void setFrozen(boolean frozen)
+    {
+        this.frozen = frozen;
+        if(spatialIndex != null) {
+            spatialIndex.setFrozen(frozen);
+        }
+    }
+
+    /**
+     * @return The neighbourhood shape of this field.
+     */
+    public Topology getTopology()
+    {
+        return topology;
+    }
+
+    /**
+     * Lay terrain under the field. Blocked cells are never offered as free
+     * locations, so nothing moves or spreads into them. This should be done
+     * before the field is populated.
+     * @param terrain The terrain, the same size as the field, or null for grass only.
+     */
+    public void setTerrain(Terrain terrain)
+    {
+        if(terrain != null && (terrain.getDepth() != depth || terrain.getWidth() != width)) {
+            throw new IllegalArgumentException("Terrain is " + terrain.getDepth() + "x" + terrain.getWidth()
+                                               + " but the field is " + depth + "x" + width);
+        }
+        this.terrain = terrain;
+        if(bitboard != null) {
+            bitboard.setBlocked(terrain != null ? terrain.getBlocked() : null);
+        }
+    }
+
+    /**
+     * @return The terrain under the field, or null if it is all grass.
+     */
+    public Terrain getTerrain()
+    {
+        return terrain;
+    }
+
+    /**
+     * Check whether animals and plants may be in a cell, whatever is in it now.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return true if the terrain does not block the cell.
+     */
+    public boolean isPassable(int row, int col)
+    {
+        return terrain == null || terrain.isPassable(row, col);
+    }
+
+    /**
+     * Return the tiles of the field that are active, so passes over the
+     * whole field, such as drawing it or the ParallelStepEngine's step, can
+     * skip the dormant ones, see ActiveTiles.
+     * @return The active tiles, or null if the field is too large or unbounded.
+     */
+    public ActiveTiles getActiveTiles()
+    {
+        return activeTiles;
+    }
+
+    /**
+     * @return The topology compiled for this field.
+     */
+    public NeighbourTable getNeighbourTable()
+    {
+        return neighbourTable;
     }
     
     /**
@@ -38,10 +295,9 @@ public class Field
      */
     public void clear()
     {
-        for(int row = 0; row < depth; row++) {
-            for(int col = 0; col < width; col++) {
-                field[row][col] = null;
-            }
+        storage.clear();
+        for(FieldIndex index : indexes) {
+            index.cleared();
         }
     }
     
@@ -51,7 +307,16 @@ public class Field
      */
     public void clear(Location location)
     {
-        field[location.getRow()][location.getCol()] = null;
+        store(null, location.getRow(), location.getCol());
+    }
+
+    /**
+     * Clear the cell with the given packed key.
+     * @param cell The packed key of the cell, see Location.pack.
+     */
+    public void clear(long cell)
+    {
+        store(null, Location.row(cell), Location.col(cell));
     }
     
     /**
@@ -64,7 +329,19 @@ public class Field
      */
     public void place(Object animal, int row, int col)
     {
-        place(animal, new Location(row, col));
+        store(animal, row, col);
+    }
+
+    /**
+     * Place an object in the cell with the given packed key.
+     * If there is already an animal at the location it will
+     * be lost.
+     * @param animal The animal to be placed.
+     * @param cell The packed key of the cell, see Location.pack.
+     */
+    public void place(Object animal, long cell)
+    {
+        place(animal, Location.row(cell), Location.col(cell));
     }
     
     /**
@@ -76,7 +353,29 @@ public class Field
      */
     public void place(Object animal, Location location)
     {
-        field[location.getRow()][location.getCol()] = animal;
+        store(animal, location.getRow(), location.getCol());
+    }
+
+    /**
+     * Store an object in a cell, or empty it, and tell the indexes.
+     * @param animal The object to store, or null to empty the cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    private void store(Object animal, int row, int col)
+    {
+        int newId = SpeciesRegistry.idOf(animal);
+        if(indexes.length == 0) {
+            storage.place(animal, newId, row, col);
+            return;
+        }
+        int oldId = storage.getSpeciesIdAt(row, col);
+        storage.place(animal, newId, row, col);
+        if(oldId != newId) {
+            for(FieldIndex index : indexes) {
+                index.cellChanged(row, col, oldId, newId);
+            }
+        }
     }
     
     /**
@@ -97,9 +396,129 @@ public class Field
      */
     public Object getObjectAt(int row, int col)
     {
-        return field[row][col];
+        return storage.getObjectAt(row, col);
+    }
+
+    /**
+     * Return the animal in the cell with the given packed key, if any.
+     * @param cell The packed key of the cell, see Location.pack.
+     * @return The animal in the cell, or null if there is none.
+     */
+    public Object getObjectAt(long cell)
+    {
+        return storage.getObjectAt(Location.row(cell), Location.col(cell));
+    }
+
+    /**
+     * Return the shared location object for the given position.
+     * The same object is returned each time, so no new locations
+     * are created while the simulation runs.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The location.
+     */
+    public Location getLocation(int row, int col)
+    {
+        return storage.getLocation(row, col);
+    }
+
+    /**
+     * Return the shared location object for the cell with the given packed key.
+     * @param cell The packed key of the cell, see Location.pack.
+     * @return The location.
+     */
+    public Location getLocation(long cell)
+    {
+        return storage.getLocation(Location.row(cell), Location.col(cell));
+    }
+
+    /**
+     * Return the species id of the animal at the given location.
+     * This avoids looking at the animal object at all.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species id, or SpeciesRegistry.EMPTY if there is nothing there.
+     */
+    public int getSpeciesIdAt(int row, int col)
+    {
+        return storage.getSpeciesIdAt(row, col);
+    }
+
+    /**
+     * Pass every occupied location of the field to the given visitor.
+     * @param visitor The visitor to receive the occupied cells.
+     */
+    public void forEachOccupied(CellVisitor visitor)
+    {
+        storage.forEachOccupied(visitor);
+    }
+
+    /**
+     * Pass every occupied location of one tile of the field to the given visitor.
+     * A tile with nothing in it is not looked at. Only for fields with
+     * active tiles, see getActiveTiles.
+     * @param tileRow The row of the tile.
+     * @param tileCol The column of the tile.
+     * @param visitor The visitor to receive the occupied cells.
+     */
+    public void forEachOccupiedInTile(int tileRow, int tileCol, CellVisitor visitor)
+    {
+        if(activeTiles.getOccupied(tileRow, tileCol) == 0) {
+            return;
+        }
+        int top = tileRow * ActiveTiles.TILE_SIZE;
+        int left = tileCol * ActiveTiles.TILE_SIZE;
+        int bottom = Math.min(top + ActiveTiles.TILE_SIZE, depth);
+        int right = Math.min(left + ActiveTiles.TILE_SIZE, width);
+        for(int row = top; row < bottom; row++) {
+            for(int col = left; col < right; col++) {
+                int id = storage.getSpeciesIdAt(row, col);
+                if(id != SpeciesRegistry.EMPTY) {
+                    visitor.visit(row, col, id, storage.getObjectAt(row, col));
+                }
+            }
+        }
     }
     
+    /**
+     * Start visiting the locations adjacent to the given one, in a random order,
+     * without creating any lists. The returned cursor is shared by all code on
+     * the current thread, so it must be finished with before this is called again.
+     * @param location The location whose neighbours are wanted.
+     * @param filter Which neighbours to visit, e.g. NeighbourCursor.FREE.
+     * @return A cursor positioned before the first neighbour.
+     */
+    public NeighbourCursor neighbours(Location location, int filter)
+    {
+        assert location != null : "Null location passed to neighbours";
+        return NeighbourCursor.shared().start(this, location.getRow(), location.getCol(), filter);
+    }
+
+    /**
+     * Count the locations adjacent to the given one that pass a filter.
+     * This uses the shared cursor of the current thread, as for neighbours.
+     * @param location The location whose neighbours are wanted.
+     * @param filter Which neighbours to count, e.g. NeighbourCursor.FREE.
+     * @return The number of neighbours that pass the filter.
+     */
+    public int countNeighbours(Location location, int filter)
+    {
+        return NeighbourCursor.shared().count(this, location.getRow(), location.getCol(), filter);
+    }
+
+    /**
+     * Start visiting the locations adjacent to the given one that hold one of
+     * a set of species, in a random order. The returned cursor is the shared
+     * cursor of the current thread, as for neighbours.
+     * @param location The location whose neighbours are wanted.
+     * @param speciesSet The species ids to visit, with bit n set for species id n.
+     * @return A cursor positioned before the first matching neighbour.
+     */
+    public NeighbourCursor neighboursOfSpecies(Location location, long speciesSet)
+    {
+        return NeighbourCursor.shared().startSpecies(this, location.getRow(), location.getCol(), speciesSet);
+    }
+
     /**
      * Generate a random location that is adjacent to the
      * given location, or is the same location.
@@ -110,8 +529,13 @@ public class Field
      */
     public Location randomAdjacentLocation(Location location)
     {
-        List<Location> adjacent = adjacentLocations(location);
-        return adjacent.get(0);
+        NeighbourCursor cursor = neighbours(location, NeighbourCursor.ALL);
+        if(cursor.next()) {
+            return cursor.getLocation();
+        }
+        else {
+            return location;
+        }
     }
     
     /**
@@ -121,14 +545,7 @@ public class Field
      */
     public List<Location> getFreeAdjacentLocations(Location location)
     {
-        List<Location> free = new LinkedList<>();
-        List<Location> adjacent = adjacentLocations(location);
-        for(Location next : adjacent) {
-            if(getObjectAt(next) == null) {
-                free.add(next);
-            }
-        }
-        return free;
+        return collect(neighbours(location, NeighbourCursor.FREE));
     }
     
     /**
@@ -141,10 +558,9 @@ public class Field
      */
     public Location freeAdjacentLocation(Location location)
     {
-        // The available free ones.
-        List<Location> free = getFreeAdjacentLocations(location);
-        if(free.size() > 0) {
-            return free.get(0);
+        NeighbourCursor free = neighbours(location, NeighbourCursor.FREE);
+        if(free.next()) {
+            return free.getLocation();
         }
         else {
             return null;
@@ -161,30 +577,14 @@ public class Field
     public List<Location> adjacentLocations(Location location)
     {
         assert location != null : "Null location passed to adjacentLocations";
-        // The list of locations to be returned.
-        List<Location> locations = new LinkedList<>();
-        if(location != null) {
-            int row = location.getRow();
-            int col = location.getCol();
-            for(int roffset = -1; roffset <= 1; roffset++) {
-                int nextRow = row + roffset;
-                if(nextRow >= 0 && nextRow < depth) {
-                    for(int coffset = -1; coffset <= 1; coffset++) {
-                        int nextCol = col + coffset;
-                        // Exclude invalid locations and the original location.
-                        if(nextCol >= 0 && nextCol < width && (roffset != 0 || coffset != 0)) {
-                            locations.add(new Location(nextRow, nextCol));
-                        }
-                    }
-                }
-            }
-            
-            // Shuffle the list. Several other methods rely on the list
-            // being in a random order.
-            Collections.shuffle(locations, rand);
+        if(location == null) {
+            return new LinkedList<>();
         }
-        return locations;
+        // The cursor shuffles the locations. Several other methods rely on
+        // them being in a random order.
+        return collect(neighbours(location, NeighbourCursor.ALL));
     }
+
     /**
      * Return a list of locations adjacent to the given one that contain animals
      * The list will not include the location itself.
@@ -193,15 +593,37 @@ public class Field
      * @return A list of locations adjacent to that given that contain an animal.
      */
     public List<Location> adjacentAnimals(Location location) {
-        List<Location> adjacentLocations = adjacentLocations(location);
-        List<Location> animals = new LinkedList<>();
-        for(Location l : adjacentLocations) {
-            Object species = getObjectAt(l);
-            if(species instanceof Animal) {
-                animals.add(l);
-            }
+        return collect(neighbours(location, NeighbourCursor.ANIMAL));
+    }
+
+    /**
+     * Copy the remaining locations of a cursor into a new list.
+     * @param cursor The cursor to read.
+     * @return A list of the locations, in the cursor's order.
+     */
+    private List<Location> collect(NeighbourCursor cursor)
+    {
+        List<Location> locations = new LinkedList<>();
+        while(cursor.next()) {
+            locations.add(cursor.getLocation());
         }
-        return animals;
+        return locations;
+    }
+
+    /**
+     * @return true if cells far apart may be changed from different threads at once.
+     */
+    public boolean isTileSafe()
+    {
+        return storage.isTileSafe();
+    }
+
+    /**
+     * @return true if the field has a fixed depth and width.
+     */
+    public boolean isBounded()
+    {
+        return storage.isBounded();
     }
 
     /**
@@ -0,0 +1,30 @@
+/**
+ * Something that keeps track of the contents of a field as they change,
+ * such as the occupancy bitboards. An index is added to a field with
+ * Field.addIndex and is then told about every change made through
+ * Field.place and Field.clear.
+ *
+ * When a field is stepped by the ParallelStepEngine, cellChanged is called
+ * from several threads at once, for cells in tiles that are far apart.
+ * An index must be safe to use that way.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public interface FieldIndex
+{
+    /**
+     * Record that the contents of a cell have changed.
+     * This is only called when the species id of the cell changes.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param oldSpeciesId The species id before the change, may be SpeciesRegistry.EMPTY.
+     * @param newSpeciesId The species id after the change, may be SpeciesRegistry.EMPTY.
+     */
+    void cellChanged(int row, int col, int oldSpeciesId, int newSpeciesId);
+
+    /**
+     * Record that every cell of the field has been emptied.
+     */
+    void cleared();
+}
@@ -15,6 +15,8 @@ public class FieldStats
 {
     // Counters for each type of entity in the simulation.
     private HashMap<Class, Counter> counters;
+    // The same counters, indexed by species id.
+    private Counter[] countersById;
     // Whether the counters are currently up to date.
     private boolean countsValid;
 
@@ -26,6 +28,7 @@ public class FieldStats
         // Set up a collection for counters for each type of animal that
         // we might find
         counters = new HashMap<>();
+        countersById = new Counter[SpeciesRegistry.MAX_SPECIES + 1];
         countsValid = true;
     }
 
@@ -79,6 +82,30 @@ public class FieldStats
         count.increment();
     }
 
+    /**
+     * Set the count for the species with the given id.
+     * A counter is only created for a species once it has been seen.
+     * @param speciesId The species id of the animal.
+     * @param number The number of that species in the field.
+     */
+    public void setCount(int speciesId, int number)
+    {
+        Counter count = countersById[speciesId];
+        if(count == null) {
+            if(number == 0) {
+                return;
+            }
+            Class<? extends Species> animalClass = SpeciesRegistry.getSpeciesClass(speciesId);
+            count = counters.get(animalClass);
+            if(count == null) {
+                count = new Counter(animalClass.getName());
+                counters.put(animalClass, count);
+            }
+            countersById[speciesId] = count;
+        }
+        count.setCount(number);
+    }
+
     /**
      * Indicate that an animal count has been completed.
      */
@@ -110,21 +137,15 @@ public class FieldStats
     
     /**
      * Generate counts of the number of each animal species.
-     * These are not kept up to date as animals
-     * are placed in the field, but only when a request
-     * is made for the information.
+     * The field keeps a running total of each species as animals
+     * are placed in it, so this only copies those totals.
      * @param field The field to generate the stats for.
      */
     private void generateCounts(Field field)
     {
         reset();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    incrementCount(animal.getClass());
-                }
-            }
+        for(int speciesId = 1; speciesId <= SpeciesRegistry.getMaxId(); speciesId++) {
+            setCount(speciesId, field.getPopulation(speciesId));
         }
         countsValid = true;
     }
@@ -0,0 +1,86 @@
+/**
+ * The way a field keeps track of what is in each of its cells.
+ * A Field delegates all of its storage to one of these, so the
+ * layout of the grid in memory can be changed without changing
+ * the code of the animals and plants that use the field.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public interface FieldStorage
+{
+    /**
+     * @return The depth of the stored grid.
+     */
+    int getDepth();
+
+    /**
+     * @return The width of the stored grid.
+     */
+    int getWidth();
+
+    /**
+     * @return true if the grid has a fixed size. An unbounded grid accepts
+     *         any row and column.
+     */
+    boolean isBounded();
+
+    /**
+     * @return true if cells far apart may be changed from different threads
+     *         at the same time, as the ParallelStepEngine does.
+     */
+    boolean isTileSafe();
+
+    /**
+     * Return the object in the given cell, if any.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The object in the cell, or null if it is empty.
+     */
+    Object getObjectAt(int row, int col);
+
+    /**
+     * Return the species id of the object in the given cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The species id, or SpeciesRegistry.EMPTY if the cell is empty.
+     */
+    int getSpeciesIdAt(int row, int col);
+
+    /**
+     * Return the shared location object for the given cell.
+     * The same object is returned every time for the same cell, for as
+     * long as the storage keeps anything for that cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The location of the cell.
+     */
+    Location getLocation(int row, int col);
+
+    /**
+     * Store an object in the given cell, replacing anything already there.
+     * @param occupant The object to store.
+     * @param speciesId The species id of the object.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    void place(Object occupant, int speciesId, int row, int col);
+
+    /**
+     * Empty the given cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    void clear(int row, int col);
+
+    /**
+     * Empty every cell.
+     */
+    void clear();
+
+    /**
+     * Pass every occupied cell to the visitor.
+     * @param visitor The visitor to receive the cells.
+     */
+    void forEachOccupied(CellVisitor visitor);
+}
@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+/**
+ * Field storage that keeps the whole grid in flat arrays: the species id of
+ * the occupant of each cell, and beside it the occupant itself. Cells are
+ * laid out row by row, so scanning the field for species ids walks a
+ * contiguous array of bytes instead of chasing a reference per cell.
+ *
+ * Each cell is its own element of the arrays, and nothing is shared between
+ * cells, so cells far apart can be changed from different threads at the
+ * same time without any locking.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class FlatFieldStorage implements FieldStorage
+{
+    // The depth and width of the grid.
+    private final int depth, width;
+    // The species id of the occupant of each cell.
+    private final byte[] speciesIds;
+    // The occupant of each cell, or null.
+    private final Object[] occupants;
+    // The shared location of each cell, created when first asked for.
+    private final Location[] locations;
+
+    /**
+     * Create storage for a grid of the given size.
+     * @param depth The depth of the grid.
+     * @param width The width of the grid.
+     */
+    public FlatFieldStorage(int depth, int width)
+    {
+        if((long) depth * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Field too large for flat storage: " + depth + "x" + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        speciesIds = new byte[depth * width];
+        occupants = new Object[depth * width];
+        locations = new Location[depth * width];
+    }
+
+    /**
+     * @return The depth of the grid.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the grid.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return true, the grid has a fixed size.
+     */
+    public boolean isBounded()
+    {
+        return true;
+    }
+
+    /**
+     * @return true, cells share nothing that can be changed.
+     */
+    public boolean isTileSafe()
+    {
+        return true;
+    }
+
+    /**
+     * Return the object in the given cell, if any.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The object in the cell, or null if it is empty.
+     */
+    public Object getObjectAt(int row, int col)
+    {
+        return occupants[row * width + col];
+    }
+
+    /**
+     * Return the species id of the object in the given cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The species id, or SpeciesRegistry.EMPTY if the cell is empty.
+     */
+    public int getSpeciesIdAt(int row, int col)
+    {
+        return speciesIds[row * width + col];
+    }
+
+    /**
+     * Return the shared location object for the given cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The location of the cell.
+     */
+    public Location getLocation(int row, int col)
+    {
+        int index = row * width + col;
+        Location location = locations[index];
+        if(location == null) {
+            location = new Location(row, col);
+            locations[index] = location;
+        }
+        return location;
+    }
+
+    /**
+     * Store an object in the given cell, replacing anything already there.
+     * @param occupant The object to store.
+     * @param speciesId The species id of the object.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    public void place(Object occupant, int speciesId, int row, int col)
+    {
+        if(occupant == null) {
+            clear(row, col);
+            return;
+        }
+        int index = row * width + col;
+        occupants[index] = occupant;
+        speciesIds[index] = (byte) speciesId;
+    }
+
+    /**
+     * Empty the given cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    public void clear(int row, int col)
+    {
+        int index = row * width + col;
+        occupants[index] = null;
+        speciesIds[index] = SpeciesRegistry.EMPTY;
+    }
+
+    /**
+     * Empty every cell.
+     */
+    public void clear()
+    {
+        Arrays.fill(speciesIds, (byte) SpeciesRegistry.EMPTY);
+        Arrays.fill(occupants, null);
+    }
+
+    /**
+     * Pass every occupied cell to the visitor, in row order.
+     * @param visitor The visitor to receive the cells.
+     */
+    public void forEachOccupied(CellVisitor visitor)
+    {
+        int index = 0;
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++, index++) {
+                int id = speciesIds[index];
+                if(id != SpeciesRegistry.EMPTY) {
+                    visitor.visit(row, col, id, occupants[index]);
+                }
+            }
+        }
+    }
+}
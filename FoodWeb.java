@@ -0,0 +1,96 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Who eats whom, as a matrix of eater species ids by food species ids. Each
+ * row is a set of species ids, with bit n set if the eater can eat species
+ * id n, so whether one species can eat another is a single AND.
+ *
+ * A row is compiled from the diet of the eater in its SpeciesParameters,
+ * which names the classes it eats, the first time the row is needed. The
+ * classes named are given species ids then, so a new species joins the food
+ * web by naming it in a diet, without any change to the code that reads it.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class FoodWeb
+{
+    // The row of an eater that has not been compiled yet. Id 0 is never
+    // in a diet, so no compiled row has every bit set.
+    private static final long UNKNOWN = -1;
+
+    // The diet of each eater species id.
+    private static final AtomicLongArray diets = newDiets();
+
+    /**
+     * Return the species ids an eater can eat.
+     * @param eaterId The species id of the eater.
+     * @return The set of species ids it can eat, with bit n set for species id n.
+     */
+    public static long getDiet(int eaterId)
+    {
+        long diet = diets.get(eaterId);
+        if(diet == UNKNOWN) {
+            diet = compile(eaterId);
+        }
+        return diet;
+    }
+
+    /**
+     * @param eaterId The species id of the eater.
+     * @param foodId The species id of the food.
+     * @return true if the eater can eat the food.
+     */
+    public static boolean canEat(int eaterId, int foodId)
+    {
+        return ((getDiet(eaterId) >>> foodId) & 1) != 0;
+    }
+
+    /**
+     * Forget every compiled row, so they are compiled again from the
+     * diets as they are now.
+     */
+    public static void clear()
+    {
+        for(int id = 0; id < diets.length(); id++) {
+            diets.set(id, UNKNOWN);
+        }
+    }
+
+    /**
+     * Compile the row of an eater from its diet.
+     * @param eaterId The species id of the eater.
+     * @return The row, or an empty diet if no species of the eater's kind
+     *         has been created yet.
+     */
+    private static long compile(int eaterId)
+    {
+        SpeciesParameters parameters = SpeciesParameters.get(eaterId);
+        if(parameters == null) {
+            return 0;
+        }
+        long diet = 0;
+        for(String name : parameters.getEdibleSpecies()) {
+            try {
+                diet |= 1L << SpeciesRegistry.getId(Class.forName(name).asSubclass(Species.class));
+            }
+            catch(ClassNotFoundException | ClassCastException e) {
+                // No species of that name exists, so it can never be found to eat.
+            }
+        }
+        diets.set(eaterId, diet);
+        return diet;
+    }
+
+    /**
+     * @return A matrix with no rows compiled.
+     */
+    private static AtomicLongArray newDiets()
+    {
+        AtomicLongArray rows = new AtomicLongArray(SpeciesRegistry.MAX_SPECIES + 1);
+        for(int id = 0; id < rows.length(); id++) {
+            rows.set(id, UNKNOWN);
+        }
+        return rows;
+    }
+}
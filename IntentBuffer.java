@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+/**
+ * A list of the things species want to do in a step, written while they plan
+ * and carried out later by the IntentStepEngine. Each intent names the species
+ * that wants it, what kind of intent it is, and where relevant a cell and a
+ * target species.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class IntentBuffer
+{
+    // The kinds of intent.
+    // The species dies of old age, hunger or overcrowding.
+    public static final int DIE = 0;
+    // The species passes its disease to the target animal.
+    public static final int INFECT = 1;
+    // The disease of the species runs for another step, which may kill it.
+    public static final int DISEASE = 2;
+    // The species eats the target in the given cell and moves there.
+    public static final int EAT = 3;
+    // The species moves to the given free cell.
+    public static final int MOVE = 4;
+    // The species has offspring in the given free cell.
+    public static final int BIRTH = 5;
+
+    // The number of intents the buffer has room for at first.
+    private static final int INITIAL_CAPACITY = 256;
+
+    // The species that wants each intent.
+    private Species[] agents = new Species[INITIAL_CAPACITY];
+    // The kind of each intent.
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    // The packed key of the cell of each intent, or Location.NONE.
+    private long[] cells = new long[INITIAL_CAPACITY];
+    // The target of each intent, or null.
+    private Species[] targets = new Species[INITIAL_CAPACITY];
+    // The number of intents.
+    private int size;
+
+    /**
+     * Add an intent with no cell or target.
+     * @param kind The kind of intent, e.g. DIE.
+     * @param agent The species that wants it.
+     */
+    public void add(int kind, Species agent)
+    {
+        add(kind, agent, Location.NONE, null);
+    }
+
+    /**
+     * Add an intent.
+     * @param kind The kind of intent, e.g. MOVE.
+     * @param agent The species that wants it.
+     * @param cell The packed key of the cell, or Location.NONE.
+     * @param target The target species, or null.
+     */
+    public void add(int kind, Species agent, long cell, Species target)
+    {
+        if(size == kinds.length) {
+            int capacity = size * 2;
+            agents = Arrays.copyOf(agents, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            cells = Arrays.copyOf(cells, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+        }
+        agents[size] = agent;
+        kinds[size] = (byte) kind;
+        cells[size] = cell;
+        targets[size] = target;
+        size++;
+    }
+
+    /**
+     * @return The number of intents.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param index The index of the intent.
+     * @return The species that wants the intent.
+     */
+    public Species getAgent(int index)
+    {
+        return agents[index];
+    }
+
+    /**
+     * @param index The index of the intent.
+     * @return The kind of the intent.
+     */
+    public int getKind(int index)
+    {
+        return kinds[index];
+    }
+
+    /**
+     * @param index The index of the intent.
+     * @return The packed key of the cell of the intent, or Location.NONE.
+     */
+    public long getCell(int index)
+    {
+        return cells[index];
+    }
+
+    /**
+     * @param index The index of the intent.
+     * @return The target of the intent, or null.
+     */
+    public Species getTarget(int index)
+    {
+        return targets[index];
+    }
+
+    /**
+     * Remove every intent, dropping the references to the species.
+     */
+    public void clear()
+    {
+        Arrays.fill(agents, 0, size, null);
+        Arrays.fill(targets, 0, size, null);
+        size = 0;
+    }
+}
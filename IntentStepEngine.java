@@ -0,0 +1,241 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Steps every species in two phases, so the result does not depend on the
+ * order the species act in and the first phase can run on several threads.
+ *
+ * In the plan phase each species looks at the field as it was at the end of
+ * the last step and writes down what it wants to do, with Species.plan. The
+ * field is not changed at all during this phase, so it is the previous step's
+ * grid for every species. The field is frozen while they plan, so its
+ * spatial index is searched without locks and the species can plan at the
+ * same time without waiting for each other. Each task writes to its own
+ * IntentBuffer.
+ *
+ * In the commit phase the intents are carried out on one thread, in the order
+ * of the species list:
+ * first every death, infection and disease, then every meal, move and birth.
+ * A meal only happens if the target is still alive and still in the cell it
+ * was planned in, and a move or birth only if the cell is still free, so when
+ * two species want the same prey or cell the one earlier in the list gets it.
+ * The others stay where they are.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class IntentStepEngine implements StepEngine
+{
+    // The number of species planned by one task.
+    private static final int SPECIES_PER_TASK = 1024;
+
+    // The pool the species plan on.
+    private final ForkJoinPool pool;
+    // One buffer per task, kept from step to step.
+    private final List<IntentBuffer> buffers;
+    // The species born in the current step.
+    private final List<Species> newborns;
+
+    /**
+     * Create an engine that plans on the common pool.
+     */
+    public IntentStepEngine()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create an engine that plans on the given pool.
+     * @param pool The pool to plan on.
+     */
+    public IntentStepEngine(ForkJoinPool pool)
+    {
+        this.pool = pool;
+        buffers = new ArrayList<>();
+        newborns = new ArrayList<>();
+    }
+
+    /**
+     * Let every living species plan and then commit its intents. Dead species
+     * are dropped from the list and newborn species are added to the end of it.
+     * @param species The species in the field.
+     */
+    public void step(List<Species> species)
+    {
+        int tasks = (species.size() + SPECIES_PER_TASK - 1) / SPECIES_PER_TASK;
+        while(buffers.size() < tasks) {
+            buffers.add(new IntentBuffer());
+        }
+        if(tasks > 0) {
+            Field field = fieldOf(species);
+            if(field != null) {
+                field.setFrozen(true);
+            }
+            try {
+                pool.invoke(new Plan(species, 0, tasks));
+            }
+            finally {
+                if(field != null) {
+                    field.setFrozen(false);
+                }
+            }
+        }
+
+        for(int task = 0; task < tasks; task++) {
+            commitFates(buffers.get(task));
+        }
+        for(int task = 0; task < tasks; task++) {
+            commitActions(buffers.get(task), newborns);
+            buffers.get(task).clear();
+        }
+
+        // Drop the dead, keeping the order of the living.
+        int kept = 0;
+        for(int i = 0; i < species.size(); i++) {
+            Species s = species.get(i);
+            if(s.isAlive()) {
+                species.set(kept++, s);
+            }
+        }
+        species.subList(kept, species.size()).clear();
+        species.addAll(newborns);
+        newborns.clear();
+    }
+
+    /**
+     * Find the field the species are in.
+     * @param species The species in the field.
+     * @return The field of the first living species, or null if none is alive.
+     */
+    private static Field fieldOf(List<Species> species)
+    {
+        for(Species s : species) {
+            if(s.isAlive()) {
+                return s.getField();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Carry out the deaths, infections and disease of one buffer.
+     * @param intents The intents.
+     */
+    private void commitFates(IntentBuffer intents)
+    {
+        for(int i = 0; i < intents.size(); i++) {
+            Species agent = intents.getAgent(i);
+            switch(intents.getKind(i)) {
+                case IntentBuffer.DIE:
+                    if(agent.isAlive()) {
+                        agent.setDead();
+                    }
+                    break;
+                case IntentBuffer.INFECT:
+                    if(intents.getTarget(i).isAlive()) {
+                        ((Animal) intents.getTarget(i)).setInfected();
+                    }
+                    break;
+                case IntentBuffer.DISEASE:
+                    if(agent.isAlive()) {
+                        ((Animal) agent).sufferDisease();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Carry out the meals, moves and births of one buffer, for the species
+     * still alive.
+     * @param intents The intents.
+     * @param newborns A list to receive the newborn species.
+     */
+    private void commitActions(IntentBuffer intents, List<Species> newborns)
+    {
+        for(int i = 0; i < intents.size(); i++) {
+            Species agent = intents.getAgent(i);
+            if(!agent.isAlive()) {
+                continue;
+            }
+            long cell = intents.getCell(i);
+            switch(intents.getKind(i)) {
+                case IntentBuffer.EAT:
+                    Species target = intents.getTarget(i);
+                    // The target may have been eaten, or moved away by an
+                    // intent earlier in the list.
+                    if(target.isAlive() && agent.getField().getObjectAt(cell) == target) {
+                        ((Animal) agent).eat(target);
+                        if(!target.isAlive()) {
+                            agent.setLocation(cell);
+                        }
+                    }
+                    break;
+                case IntentBuffer.MOVE:
+                    if(agent.getField().getObjectAt(cell) == null) {
+                        agent.setLocation(cell);
+                    }
+                    break;
+                case IntentBuffer.BIRTH:
+                    Field field = agent.getField();
+                    if(field.getObjectAt(cell) == null) {
+                        newborns.add(agent.createOffspring(field.getLocation(cell)));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Plan the species of a range of tasks, splitting the range in two
+     * until it is a single task.
+     */
+    private class Plan extends RecursiveAction
+    {
+        // The version of the serialised form, as tasks are Serializable.
+        private static final long serialVersionUID = 1L;
+
+        // The species in the field.
+        private final List<Species> species;
+        // The tasks to plan, from first up to but not including last.
+        private final int first, last;
+
+        /**
+         * @param species The species in the field.
+         * @param first The first task.
+         * @param last One past the last task.
+         */
+        Plan(List<Species> species, int first, int last)
+        {
+            this.species = species;
+            this.first = first;
+            this.last = last;
+        }
+
+        /**
+         * Plan the species of the tasks.
+         */
+        protected void compute()
+        {
+            if(last - first > 1) {
+                int middle = (first + last) >>> 1;
+                invokeAll(new Plan(species, first, middle), new Plan(species, middle, last));
+                return;
+            }
+            IntentBuffer intents = buffers.get(first);
+            int end = Math.min(species.size(), (first + 1) * SPECIES_PER_TASK);
+            for(int i = first * SPECIES_PER_TASK; i < end; i++) {
+                Species s = species.get(i);
+                if(s.isAlive()) {
+                    s.plan(intents);
+                }
+            }
+        }
+    }
+}
@@ -29,6 +29,8 @@ public class Lion extends Predator
     private static final boolean DIURNAL = false;
     //A list of species that are part of the ion's diet.
     private static final List<String> EDIBLE_SPECIES = Arrays.asList("Gazelle", "Giraffe");
+    //How far away the lion can see prey to stalk it.
+    private static final int PERCEPTION_RADIUS = 6;
     // A shared random number generator to control breeding.
     private static final Random rand = Randomizer.getRandom();
 
@@ -44,12 +46,12 @@ public class Lion extends Predator
     {
         super(field, location);
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE/2);
-            foodLevel = rand.nextInt(INITIAL_FOOD_LEVEL);
+            setAge(rand.nextInt(getParameters().getMaxAge()/2));
+            setFoodLevel(rand.nextInt(getParameters().getInitialFoodLevel()));
         }
         else {
-            age = 0;
-            foodLevel = INITIAL_FOOD_LEVEL;
+            setAge(0);
+            setFoodLevel(getParameters().getInitialFoodLevel());
         }
     }
 
@@ -122,6 +124,14 @@ public class Lion extends Predator
         return DIURNAL;
     }
 
+    /**
+     * @return How far away the lion can see prey.
+     */
+    protected int getPERCEPTION_RADIUS()
+    {
+        return PERCEPTION_RADIUS;
+    }
+
     /**
      * @return The list of species that the lion can eat.
      */
@@ -1,14 +1,21 @@
 /**
  * Represent a location in a rectangular grid.
+ * A location can also be packed into a single long key, with the row in the
+ * top 32 bits and the column in the bottom 32 bits. Keys are unique for every
+ * (row, col) pair, whatever the size of the grid. A Field hands out one shared
+ * Location per cell, so code that needs the object does not have to create one.
  *
  * @author Colin Billhardt and Thom Treebus
  * @version 2021.03.03
  */
 public class Location
 {
+    // A key that does not belong to any cell.
+    public static final long NONE = Long.MIN_VALUE;
+
     // Row and column positions.
-    private int row;
-    private int col;
+    private final int row;
+    private final int col;
 
     /**
      * Represent a row and column.
@@ -45,14 +52,50 @@ public class Location
     }
     
     /**
-     * Use the top 16 bits for the row value and the bottom for
-     * the column. Except for very big grids, this should give a
-     * unique hash code for each (row, col) pair.
+     * Mix the packed key of the location down to 32 bits.
+     * Use getKey where a collision-free key is needed.
      * @return A hashcode for the location.
      */
     public int hashCode()
     {
-        return (row << 16) + col;
+        return (int) ((getKey() * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    /**
+     * @return The packed key of this location.
+     */
+    public long getKey()
+    {
+        return pack(row, col);
+    }
+
+    /**
+     * Pack a row and column into a single key.
+     * @param row The row.
+     * @param col The column.
+     * @return The key.
+     */
+    public static long pack(int row, int col)
+    {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param key A packed key.
+     * @return The row of the key.
+     */
+    public static int row(long key)
+    {
+        return (int) (key >> 32);
+    }
+
+    /**
+     * @param key A packed key.
+     * @return The column of the key.
+     */
+    public static int col(long key)
+    {
+        return (int) key;
     }
     
     /**
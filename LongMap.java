@@ -0,0 +1,205 @@
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to objects, using open addressing.
+ * Unlike a HashMap with Long keys, looking a key up does not
+ * create a boxed key, so it can be used on every step without
+ * making garbage. The values can be walked by slot index with
+ * capacity and valueAt.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class LongMap<V>
+{
+    // The smallest table size. Table sizes are powers of two.
+    private static final int MIN_CAPACITY = 16;
+
+    // The keys in each slot.
+    private long[] keys;
+    // The values in each slot, null for an empty slot.
+    private Object[] values;
+    // The number of entries.
+    private int size;
+    // capacity - 1, used to wrap slot indexes.
+    private int mask;
+
+    /**
+     * Create an empty map.
+     */
+    public LongMap()
+    {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Return the value stored under the given key.
+     * @param key The key.
+     * @return The value, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        int slot = slot(key);
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Store a value under the given key, replacing any value already there.
+     * @param key The key.
+     * @param value The value, must not be null.
+     */
+    public void put(long key, V value)
+    {
+        int slot = slot(key);
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if(size * 2 > values.length) {
+            resize(values.length * 2);
+        }
+    }
+
+    /**
+     * Remove the value stored under the given key.
+     * @param key The key.
+     * @return The value that was removed, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        int slot = slot(key);
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                V removed = (V) values[slot];
+                closeGap(slot);
+                size--;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Remove every entry.
+     */
+    public void clear()
+    {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return The number of slots, for walking the map with valueAt.
+     */
+    public int capacity()
+    {
+        return values.length;
+    }
+
+    /**
+     * Return the value in a slot.
+     * @param slot The slot, from 0 to capacity() - 1.
+     * @return The value, or null if the slot is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot)
+    {
+        return (V) values[slot];
+    }
+
+    /**
+     * Return the key in a slot.
+     * @param slot The slot, from 0 to capacity() - 1.
+     * @return The key. Only meaningful if valueAt(slot) is not null.
+     */
+    public long keyAt(int slot)
+    {
+        return keys[slot];
+    }
+
+    /**
+     * Find the home slot of a key.
+     * @param key The key.
+     * @return The slot the key hashes to.
+     */
+    private int slot(long key)
+    {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Empty a slot, moving later entries of the same probe run back
+     * so that every entry can still be found from its home slot.
+     * @param gap The slot to empty.
+     */
+    private void closeGap(int gap)
+    {
+        int slot = (gap + 1) & mask;
+        while(values[slot] != null) {
+            int home = slot(keys[slot]);
+            // Move the entry if its home is not between the gap and its slot.
+            if(((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        values[gap] = null;
+    }
+
+    /**
+     * Move every entry into a table of the given size.
+     * @param capacity The new table size, a power of two.
+     */
+    private void resize(int capacity)
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for(int i = 0; i < oldValues.length; i++) {
+            if(oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                while(values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Create empty tables.
+     * @param capacity The table size, a power of two.
+     */
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+}
@@ -0,0 +1,352 @@
+/**
+ * A reusable cursor over the locations adjacent to a location in a field.
+ * Which locations are adjacent is decided by the field's topology.
+ * The neighbours are visited in a random order, which depends only on the
+ * step and the centre location, so it is the same each time a run is
+ * repeated. No lists or iterators are created. A filter can be given so only
+ * free cells, or only cells holding an animal or a plant, are visited.
+ *
+ * Each thread has one shared cursor, returned by Field.neighbours. A cursor
+ * must be finished with before it is started again, so code that needs two
+ * neighbourhoods at once should create its own cursor.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class NeighbourCursor
+{
+    // Filters that decide which neighbours are visited.
+    // Visit every neighbour within the field.
+    public static final int ALL = 0;
+    // Visit only empty neighbours that the terrain does not block.
+    public static final int FREE = 1;
+    // Visit only neighbours that hold something.
+    public static final int OCCUPIED = 2;
+    // Visit only neighbours that hold an animal.
+    public static final int ANIMAL = 3;
+    // Visit only neighbours that hold a plant.
+    public static final int PLANT = 4;
+    // Visit only neighbours that hold one of a set of species, see startSpecies.
+    private static final int SPECIES = 5;
+
+    // The Moore offsets, in the order of the bits of a bitboard neighbour mask.
+    private static final int[] MOORE_ROWS = { -1, -1, -1, 0, 0, 1, 1, 1 };
+    private static final int[] MOORE_COLS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+    // The number of neighbours the cursor has room for at first.
+    private static final int INITIAL_NEIGHBOURS = 8;
+    // The cursor shared by all code running on a thread.
+    private static final ThreadLocal<NeighbourCursor> shared = new ThreadLocal<NeighbourCursor>() {
+        protected NeighbourCursor initialValue()
+        {
+            return new NeighbourCursor();
+        }
+    };
+
+    // The field being looked at.
+    private Field field;
+    // The random number generator for shuffling the neighbours.
+    private final CounterRandom rand = Randomizer.newStream();
+    // Whether the neighbours are visited in a random order.
+    private final boolean shuffled;
+    // The rows and columns of the neighbours that passed the filter, in visiting order.
+    private int[] rows = new int[INITIAL_NEIGHBOURS];
+    private int[] cols = new int[INITIAL_NEIGHBOURS];
+    // The species ids to visit, for the SPECIES filter.
+    private long speciesSet;
+    // The number of neighbours that passed the filter.
+    private int size;
+    // The index of the current neighbour, -1 before the first call to next.
+    private int position;
+
+    /**
+     * Create a cursor that is not yet looking at any location.
+     */
+    public NeighbourCursor()
+    {
+        this(true);
+    }
+
+    /**
+     * Create a cursor that is not yet looking at any location.
+     * @param shuffled true to visit the neighbours in a random order, false
+     *                 for code that does not care about the order and wants
+     *                 to save the cost of shuffling.
+     */
+    public NeighbourCursor(boolean shuffled)
+    {
+        this.shuffled = shuffled;
+        size = 0;
+        position = -1;
+    }
+
+    /**
+     * Return the cursor shared by code running on the current thread.
+     * @return The thread's cursor.
+     */
+    public static NeighbourCursor shared()
+    {
+        return shared.get();
+    }
+
+    /**
+     * Start visiting the neighbours of the given location.
+     * When the field keeps occupancy bitboards the matching neighbours are
+     * read from them with a few bit operations and then shuffled. Otherwise
+     * all the neighbours are shuffled and then those not matching the filter
+     * are dropped. The two ways visit the neighbours in different orders, but
+     * a field always uses the same one.
+     * @param field The field to look in.
+     * @param row The row of the centre location.
+     * @param col The column of the centre location.
+     * @param filter Which neighbours to visit, e.g. FREE.
+     * @return This cursor.
+     */
+    public NeighbourCursor start(Field field, int row, int col, int filter)
+    {
+        this.field = field;
+        OccupancyBitboard bitboard = field.getNeighbourhoodBitboard();
+        if(bitboard != null && filter != ALL) {
+            return startFromMask(row, col, filterMask(bitboard, row, col, filter));
+        }
+
+        NeighbourTable table = field.getNeighbourTable();
+        if(rows.length < table.getMaxNeighbours()) {
+            rows = new int[table.getMaxNeighbours()];
+            cols = new int[table.getMaxNeighbours()];
+        }
+        int count = table.fill(row, col, rows, cols);
+
+        // Shuffle in the same way as Collections.shuffle.
+        shuffle(row, col, count);
+
+        // Keep only the neighbours that pass the filter, preserving their order.
+        size = 0;
+        for(int i = 0; i < count; i++) {
+            if(matches(rows[i], cols[i], filter)) {
+                rows[size] = rows[i];
+                cols[size] = cols[i];
+                size++;
+            }
+        }
+        position = -1;
+        return this;
+    }
+
+    /**
+     * Start visiting the neighbours of the given location that hold
+     * one of a set of species, in a random order.
+     * @param field The field to look in.
+     * @param row The row of the centre location.
+     * @param col The column of the centre location.
+     * @param speciesSet The species ids to visit, with bit n set for species id n.
+     * @return This cursor.
+     */
+    public NeighbourCursor startSpecies(Field field, int row, int col, long speciesSet)
+    {
+        this.speciesSet = speciesSet;
+        return start(field, row, col, SPECIES);
+    }
+
+    /**
+     * Count the neighbours of a location that pass a filter, without
+     * visiting them. The cursor must not be in use.
+     * @param field The field to look in.
+     * @param row The row of the centre location.
+     * @param col The column of the centre location.
+     * @param filter Which neighbours to count, e.g. FREE.
+     * @return The number of neighbours that pass the filter.
+     */
+    public int count(Field field, int row, int col, int filter)
+    {
+        this.field = field;
+        OccupancyBitboard bitboard = field.getNeighbourhoodBitboard();
+        if(bitboard != null && filter != ALL) {
+            return Integer.bitCount(filterMask(bitboard, row, col, filter));
+        }
+        NeighbourTable table = field.getNeighbourTable();
+        if(rows.length < table.getMaxNeighbours()) {
+            rows = new int[table.getMaxNeighbours()];
+            cols = new int[table.getMaxNeighbours()];
+        }
+        int count = table.fill(row, col, rows, cols);
+        int matching = 0;
+        for(int i = 0; i < count; i++) {
+            if(matches(rows[i], cols[i], filter)) {
+                matching++;
+            }
+        }
+        size = 0;
+        position = -1;
+        return matching;
+    }
+
+    /**
+     * Move to the next neighbour.
+     * @return true if there is another neighbour, false if all have been visited.
+     */
+    public boolean next()
+    {
+        if(position < size) {
+            position++;
+        }
+        return position < size;
+    }
+
+    /**
+     * @return The number of neighbours that passed the filter.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return The row of the current neighbour.
+     */
+    public int getRow()
+    {
+        return rows[position];
+    }
+
+    /**
+     * @return The column of the current neighbour.
+     */
+    public int getCol()
+    {
+        return cols[position];
+    }
+
+    /**
+     * @return The packed key of the current neighbour.
+     */
+    public long getKey()
+    {
+        return Location.pack(rows[position], cols[position]);
+    }
+
+    /**
+     * @return The field's shared location object for the current neighbour.
+     */
+    public Location getLocation()
+    {
+        return field.getLocation(rows[position], cols[position]);
+    }
+
+    /**
+     * @return The object in the current neighbour, or null if it is empty.
+     */
+    public Object getObject()
+    {
+        return field.getObjectAt(rows[position], cols[position]);
+    }
+
+    /**
+     * Check whether a cell passes a filter.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param filter The filter to apply.
+     * @return true if the cell should be visited.
+     */
+    private boolean matches(int row, int col, int filter)
+    {
+        switch(filter) {
+            case FREE:
+                return field.getSpeciesIdAt(row, col) == SpeciesRegistry.EMPTY && field.isPassable(row, col);
+            case OCCUPIED:
+                return field.getSpeciesIdAt(row, col) != SpeciesRegistry.EMPTY;
+            case ANIMAL:
+                return SpeciesRegistry.isAnimal(field.getSpeciesIdAt(row, col));
+            case PLANT:
+                return SpeciesRegistry.isPlant(field.getSpeciesIdAt(row, col));
+            case SPECIES:
+                return ((speciesSet >>> field.getSpeciesIdAt(row, col)) & 1) != 0;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Read the neighbours that pass a filter from a bitboard.
+     * @param bitboard The field's bitboard.
+     * @param row The row of the centre location.
+     * @param col The column of the centre location.
+     * @param filter The filter to apply.
+     * @return A neighbour mask of the matching neighbours.
+     */
+    private int filterMask(OccupancyBitboard bitboard, int row, int col, int filter)
+    {
+        switch(filter) {
+            case FREE:
+                return bitboard.freeMask(row, col);
+            case OCCUPIED:
+                return bitboard.occupiedMask(row, col);
+            case ANIMAL:
+                return bitboard.animalMask(row, col);
+            case PLANT:
+                return bitboard.plantMask(row, col);
+            case SPECIES:
+                return bitboard.speciesMask(row, col, speciesSet);
+            default:
+                return bitboard.validMask(row, col);
+        }
+    }
+
+    /**
+     * Visit the neighbours set in a bitboard neighbour mask, in a random order.
+     * @param row The row of the centre location.
+     * @param col The column of the centre location.
+     * @param mask The neighbours to visit.
+     * @return This cursor.
+     */
+    private NeighbourCursor startFromMask(int row, int col, int mask)
+    {
+        int depth = field.getDepth();
+        int width = field.getWidth();
+        size = 0;
+        while(mask != 0) {
+            int neighbour = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            // Only a wrapping field has set bits that lead over an edge.
+            rows[size] = Math.floorMod(row + MOORE_ROWS[neighbour], depth);
+            cols[size] = Math.floorMod(col + MOORE_COLS[neighbour], width);
+            size++;
+        }
+        shuffle(row, col, size);
+        position = -1;
+        return this;
+    }
+
+    /**
+     * Shuffle the gathered neighbours. The order depends only on the step
+     * and the centre location.
+     * @param row The row of the centre location.
+     * @param col The column of the centre location.
+     * @param count The number of neighbours to shuffle.
+     */
+    private void shuffle(int row, int col, int count)
+    {
+        if(!shuffled) {
+            return;
+        }
+        Randomizer.getStream(rand, Location.pack(row, col), Randomizer.SHUFFLE);
+        for(int i = count; i > 1; i--) {
+            swap(i - 1, rand.nextInt(i));
+        }
+    }
+
+    /**
+     * Swap two of the gathered neighbours.
+     * @param i The index of the first neighbour.
+     * @param j The index of the second neighbour.
+     */
+    private void swap(int i, int j)
+    {
+        int row = rows[i];
+        int col = cols[i];
+        rows[i] = rows[j];
+        cols[i] = cols[j];
+        rows[j] = row;
+        cols[j] = col;
+    }
+}
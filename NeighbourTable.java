@@ -0,0 +1,229 @@
+import java.util.Arrays;
+
+/**
+ * A topology compiled for a field of a particular size.
+ *
+ * Every location of the field is put into a class depending on how close it
+ * is to each edge: most locations are in the interior, where every offset of
+ * the topology is valid, and the rest are in one of a few border classes.
+ * For each class (and row parity, for hexagonal grids) the table holds the
+ * list of offsets that are valid there, already adjusted for wrapping around
+ * the edges. Finding the neighbours of a location is then two array lookups
+ * to find its class, followed by one addition per neighbour.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class NeighbourTable
+{
+    // Marks an offset that leads outside the field.
+    private static final int INVALID = Integer.MIN_VALUE;
+
+    // Whether the field has edges at all.
+    private final boolean bounded;
+    // The number of row parities the offsets depend on (1 or 2).
+    private final int parities;
+    // The number of column classes.
+    private final int colClasses;
+    // The class of each row and column. Not used for unbounded fields.
+    private final int[] rowClassOf;
+    private final int[] colClassOf;
+    // The adjusted offsets for each class and parity.
+    private final int[][] tableRows;
+    private final int[][] tableCols;
+    // The largest number of neighbours of any location.
+    private final int maxNeighbours;
+
+    /**
+     * Compile offsets for a field. Use Topology.compile rather than calling this directly.
+     * @param rowOffsets The row offsets, one array per row parity.
+     * @param colOffsets The column offsets, matching rowOffsets.
+     * @param toroidal true if the field wraps around at its edges.
+     * @param depth The depth of the field, zero if unbounded.
+     * @param width The width of the field, zero if unbounded.
+     * @param reach The largest offset in any direction.
+     */
+    NeighbourTable(int[][] rowOffsets, int[][] colOffsets, boolean toroidal, int depth, int width, int reach)
+    {
+        bounded = depth > 0 && width > 0;
+        parities = rowOffsets.length;
+        int rowClasses;
+        if(bounded) {
+            rowClassOf = classify(depth, reach);
+            colClassOf = classify(width, reach);
+            rowClasses = classCount(depth, reach);
+            colClasses = classCount(width, reach);
+        }
+        else {
+            rowClassOf = null;
+            colClassOf = null;
+            rowClasses = 1;
+            colClasses = 1;
+        }
+
+        tableRows = new int[rowClasses * colClasses * parities][];
+        tableCols = new int[rowClasses * colClasses * parities][];
+        int most = 0;
+        for(int rowClass = 0; rowClass < rowClasses; rowClass++) {
+            for(int colClass = 0; colClass < colClasses; colClass++) {
+                for(int parity = 0; parity < parities; parity++) {
+                    int table = (rowClass * colClasses + colClass) * parities + parity;
+                    int[] offsetRows = rowOffsets[parity];
+                    int[] offsetCols = colOffsets[parity];
+                    int[] rows = new int[offsetRows.length];
+                    int[] cols = new int[offsetRows.length];
+                    int count = 0;
+                    for(int i = 0; i < offsetRows.length; i++) {
+                        int dr = offsetRows[i];
+                        int dc = offsetCols[i];
+                        if(bounded) {
+                            dr = adjust(representative(rowClass, depth, reach), dr, depth, toroidal);
+                            dc = adjust(representative(colClass, width, reach), dc, width, toroidal);
+                        }
+                        if(dr != INVALID && dc != INVALID && (dr != 0 || dc != 0)
+                           && !contains(rows, cols, count, dr, dc)) {
+                            rows[count] = dr;
+                            cols[count] = dc;
+                            count++;
+                        }
+                    }
+                    tableRows[table] = Arrays.copyOf(rows, count);
+                    tableCols[table] = Arrays.copyOf(cols, count);
+                    most = Math.max(most, count);
+                }
+            }
+        }
+        maxNeighbours = most;
+    }
+
+    /**
+     * Write the neighbours of a location into the given arrays, in the order
+     * of the topology's offsets.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @param rows Receives the rows of the neighbours. Must hold getMaxNeighbours() values.
+     * @param cols Receives the columns of the neighbours.
+     * @return The number of neighbours written.
+     */
+    public int fill(int row, int col, int[] rows, int[] cols)
+    {
+        int table;
+        if(bounded) {
+            table = (rowClassOf[row] * colClasses + colClassOf[col]) * parities;
+        }
+        else {
+            table = 0;
+        }
+        if(parities == 2) {
+            table += row & 1;
+        }
+        int[] dr = tableRows[table];
+        int[] dc = tableCols[table];
+        int count = dr.length;
+        for(int i = 0; i < count; i++) {
+            rows[i] = row + dr[i];
+            cols[i] = col + dc[i];
+        }
+        return count;
+    }
+
+    /**
+     * @return The largest number of neighbours of any location.
+     */
+    public int getMaxNeighbours()
+    {
+        return maxNeighbours;
+    }
+
+    /**
+     * Work out the class of each position along one side of the field.
+     * When the side is long enough, positions closer than reach to an edge get
+     * a class for their distance from that edge and the rest share one interior
+     * class. A short side gets a class per position.
+     * @param size The length of the side.
+     * @param reach The largest offset.
+     * @return The class of each position.
+     */
+    private static int[] classify(int size, int reach)
+    {
+        int[] classes = new int[size];
+        boolean perPosition = size < 2 * reach + 1;
+        for(int pos = 0; pos < size; pos++) {
+            if(perPosition) {
+                classes[pos] = pos;
+            }
+            else if(pos < reach) {
+                classes[pos] = pos;
+            }
+            else if(pos >= size - reach) {
+                classes[pos] = reach + (size - pos);
+            }
+            else {
+                classes[pos] = reach;
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @param size The length of a side.
+     * @param reach The largest offset.
+     * @return The number of classes along that side.
+     */
+    private static int classCount(int size, int reach)
+    {
+        return size < 2 * reach + 1 ? size : 2 * reach + 1;
+    }
+
+    /**
+     * Return a position that belongs to the given class.
+     * @param positionClass The class.
+     * @param size The length of the side.
+     * @param reach The largest offset.
+     * @return A position in the class.
+     */
+    private static int representative(int positionClass, int size, int reach)
+    {
+        if(size < 2 * reach + 1 || positionClass <= reach) {
+            return positionClass;
+        }
+        // Class reach + d holds the position d from the far edge.
+        return size - (positionClass - reach);
+    }
+
+    /**
+     * Adjust an offset from a position so it stays within the field.
+     * @param pos The position.
+     * @param offset The offset.
+     * @param size The length of the side.
+     * @param toroidal true if the side wraps around.
+     * @return The adjusted offset, or INVALID if it leads outside the field.
+     */
+    private static int adjust(int pos, int offset, int size, boolean toroidal)
+    {
+        int target = pos + offset;
+        if(target >= 0 && target < size) {
+            return offset;
+        }
+        else if(toroidal) {
+            return Math.floorMod(target, size) - pos;
+        }
+        else {
+            return INVALID;
+        }
+    }
+
+    /**
+     * Check whether an offset is already in a partly built table.
+     * Wrapping on a very small field can make two offsets reach the same location.
+     */
+    private static boolean contains(int[] rows, int[] cols, int count, int dr, int dc)
+    {
+        for(int i = 0; i < count; i++) {
+            if(rows[i] == dr && cols[i] == dc) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
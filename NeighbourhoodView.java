@@ -0,0 +1,211 @@
+import java.util.Arrays;
+
+/**
+ * The neighbourhood of one location, looked at once per turn and sorted into the
+ * groups an animal or plant cares about during its turn: the free cells,
+ * the neighbours it can eat, and the neighbouring animals, some of which may
+ * be mates. Each group keeps the random order in which the neighbours were
+ * visited, so using a group is the same as walking a shuffled list of
+ * just those neighbours.
+ *
+ * Free cells are handed out one at a time with takeFree, so cells used for
+ * births during a turn are not offered again when the animal moves.
+ *
+ * Each thread has one shared view, returned by shared(). Like the shared
+ * NeighbourCursor, it must be finished with before it is filled again.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class NeighbourhoodView
+{
+    // The number of neighbours the view has room for at first.
+    private static final int INITIAL_NEIGHBOURS = 8;
+    // The view shared by all code running on a thread.
+    private static final ThreadLocal<NeighbourhoodView> shared = new ThreadLocal<NeighbourhoodView>() {
+        protected NeighbourhoodView initialValue()
+        {
+            return new NeighbourhoodView();
+        }
+    };
+
+    // The field being looked at.
+    private Field field;
+    // The packed keys of the free neighbours, and how many there are.
+    private long[] free = new long[INITIAL_NEIGHBOURS];
+    private int freeCount;
+    // The number of free neighbours handed out by takeFree.
+    private int freeTaken;
+    // The neighbours that can be eaten, their packed keys, and how many there are.
+    private Species[] edible = new Species[INITIAL_NEIGHBOURS];
+    private long[] edibleKeys = new long[INITIAL_NEIGHBOURS];
+    private int edibleCount;
+    // The neighbouring animals, whether each is a mate, and how many there are.
+    private Animal[] animals = new Animal[INITIAL_NEIGHBOURS];
+    private boolean[] mates = new boolean[INITIAL_NEIGHBOURS];
+    private int animalCount;
+
+    /**
+     * Return the view shared by code running on the current thread.
+     * @return The thread's view.
+     */
+    public static NeighbourhoodView shared()
+    {
+        return shared.get();
+    }
+
+    /**
+     * Look at the neighbours of a location and sort them into groups.
+     * @param field The field to look in.
+     * @param location The location whose neighbours are wanted.
+     * @param edibleSpeciesSet The species ids that count as edible, with bit n set for species id n.
+     * @param self The animal whose mates are wanted, or null if there are none.
+     * @return This view.
+     */
+    public NeighbourhoodView scan(Field field, Location location, long edibleSpeciesSet, Animal self)
+    {
+        this.field = field;
+        clearGroups();
+        int selfId = self != null ? self.getSpeciesId() : SpeciesRegistry.EMPTY;
+        long animalSet = SpeciesRegistry.getAnimalSet();
+        ensureCapacity(field.getNeighbourTable().getMaxNeighbours());
+        // One walk over all the neighbours, in one shuffled order, sorts
+        // each of them into the groups it belongs to.
+        NeighbourCursor cursor = field.neighbours(location, NeighbourCursor.ALL);
+        while(cursor.next()) {
+            int row = cursor.getRow();
+            int col = cursor.getCol();
+            int id = field.getSpeciesIdAt(row, col);
+            if(id == SpeciesRegistry.EMPTY) {
+                if(field.isPassable(row, col)) {
+                    free[freeCount++] = cursor.getKey();
+                }
+                continue;
+            }
+            Object occupant = cursor.getObject();
+            if(((edibleSpeciesSet >>> id) & 1) != 0) {
+                edible[edibleCount] = (Species) occupant;
+                edibleKeys[edibleCount] = cursor.getKey();
+                edibleCount++;
+            }
+            if(((animalSet >>> id) & 1) != 0) {
+                Animal animal = (Animal) occupant;
+                animals[animalCount] = animal;
+                mates[animalCount] = id == selfId && self.isFemale() != animal.isFemale();
+                animalCount++;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return The number of free neighbours not yet handed out by takeFree.
+     */
+    public int getFreeCount()
+    {
+        return freeCount - freeTaken;
+    }
+
+    /**
+     * Return one of the free neighbours not yet handed out, without taking it.
+     * @param index The index among the remaining free neighbours, from 0.
+     * @return The packed key of the free neighbour.
+     */
+    public long getFree(int index)
+    {
+        return free[freeTaken + index];
+    }
+
+    /**
+     * Hand out the next free neighbour. It will not be offered again.
+     * @return The field's shared location object for the free neighbour,
+     *         or null if there are none left.
+     */
+    public Location takeFree()
+    {
+        if(freeTaken == freeCount) {
+            return null;
+        }
+        return field.getLocation(free[freeTaken++]);
+    }
+
+    /**
+     * @return The number of neighbours that can be eaten.
+     */
+    public int getEdibleCount()
+    {
+        return edibleCount;
+    }
+
+    /**
+     * @param index The index of the edible neighbour, from 0.
+     * @return The edible neighbour.
+     */
+    public Species getEdible(int index)
+    {
+        return edible[index];
+    }
+
+    /**
+     * @param index The index of the edible neighbour, from 0.
+     * @return The packed key of the cell holding the edible neighbour.
+     */
+    public long getEdibleKey(int index)
+    {
+        return edibleKeys[index];
+    }
+
+    /**
+     * @return The number of neighbouring animals.
+     */
+    public int getAnimalCount()
+    {
+        return animalCount;
+    }
+
+    /**
+     * @param index The index of the neighbouring animal, from 0.
+     * @return The neighbouring animal.
+     */
+    public Animal getAnimal(int index)
+    {
+        return animals[index];
+    }
+
+    /**
+     * @param index The index of the neighbouring animal, from 0.
+     * @return true if the animal is of the same species and the opposite gender.
+     */
+    public boolean isMate(int index)
+    {
+        return mates[index];
+    }
+
+    /**
+     * Empty every group, dropping references to the previous neighbours.
+     */
+    private void clearGroups()
+    {
+        Arrays.fill(edible, 0, edibleCount, null);
+        Arrays.fill(animals, 0, animalCount, null);
+        freeCount = 0;
+        freeTaken = 0;
+        edibleCount = 0;
+        animalCount = 0;
+    }
+
+    /**
+     * Make sure every group has room for the given number of neighbours.
+     * @param neighbours The number of neighbours.
+     */
+    private void ensureCapacity(int neighbours)
+    {
+        if(free.length < neighbours) {
+            free = new long[neighbours];
+            edible = new Species[neighbours];
+            edibleKeys = new long[neighbours];
+            animals = new Animal[neighbours];
+            mates = new boolean[neighbours];
+        }
+    }
+}
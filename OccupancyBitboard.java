@@ -0,0 +1,328 @@
+import java.util.Arrays;
+
+/**
+ * One bit per cell of the field for each species, plus combined boards for
+ * all occupied cells, all animals and all plants. The bits of a row are
+ * packed into 64 bit words, so the eight neighbours of a cell can be read
+ * from three rows with a few shifts and masks, and a whole population can
+ * be counted with Long.bitCount.
+ *
+ * The neighbour masks returned by this class have one bit per neighbour,
+ * in the order of the Moore topology's offsets:
+ * bits 0-2 are the row above (left to right), bits 3 and 4 the left and
+ * right neighbours, and bits 5-7 the row below.
+ *
+ * Cells blocked by terrain are kept in a further board, merged with the
+ * occupied board as cells change, so finding free neighbours costs the
+ * same whether or not the field has terrain.
+ *
+ * Cells in different 128-column tiles are kept in different words, so tiles
+ * of the ParallelStepEngine that act at the same time never change the
+ * same word.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class OccupancyBitboard implements FieldIndex
+{
+    // The neighbour mask with every neighbour set.
+    public static final int ALL_NEIGHBOURS = 0xFF;
+
+    // The size of the field.
+    private final int depth, width;
+    // Whether the field wraps around at its edges.
+    private final boolean toroidal;
+    // The number of words per row.
+    private final int words;
+    // Every occupied cell.
+    private final long[] occupied;
+    // Every cell that is occupied or blocked by terrain.
+    private final long[] closed;
+    // Every cell blocked by terrain, or null if there is none.
+    private long[] blocked;
+    // Every cell holding an animal.
+    private final long[] animals;
+    // Every cell holding a plant.
+    private final long[] plants;
+    // A board per species id, created when the species is first seen.
+    private final long[][] species;
+
+    /**
+     * Create empty boards for a field.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param toroidal true if the field wraps around at its edges.
+     */
+    public OccupancyBitboard(int depth, int width, boolean toroidal)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.toroidal = toroidal;
+        words = (width + 63) >>> 6;
+        occupied = new long[depth * words];
+        closed = new long[depth * words];
+        animals = new long[depth * words];
+        plants = new long[depth * words];
+        species = new long[SpeciesRegistry.MAX_SPECIES + 1][];
+    }
+
+    /**
+     * Update the boards for a changed cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param oldSpeciesId The species id before the change.
+     * @param newSpeciesId The species id after the change.
+     */
+    public void cellChanged(int row, int col, int oldSpeciesId, int newSpeciesId)
+    {
+        int word = row * words + (col >>> 6);
+        long bit = 1L << (col & 63);
+        if(oldSpeciesId != SpeciesRegistry.EMPTY) {
+            species[oldSpeciesId][word] &= ~bit;
+            animals[word] &= ~bit;
+            plants[word] &= ~bit;
+        }
+        if(newSpeciesId != SpeciesRegistry.EMPTY) {
+            board(newSpeciesId)[word] |= bit;
+            if(SpeciesRegistry.isAnimal(newSpeciesId)) {
+                animals[word] |= bit;
+            }
+            else if(SpeciesRegistry.isPlant(newSpeciesId)) {
+                plants[word] |= bit;
+            }
+            occupied[word] |= bit;
+            closed[word] |= bit;
+        }
+        else {
+            occupied[word] &= ~bit;
+            if(blocked == null || (blocked[word] & bit) == 0) {
+                closed[word] &= ~bit;
+            }
+        }
+    }
+
+    /**
+     * Mark the cells that are blocked by terrain, so they are never free.
+     * @param blocked One bit per blocked cell, laid out as the rows of this board,
+     *                or null if nothing is blocked.
+     */
+    public void setBlocked(long[] blocked)
+    {
+        this.blocked = blocked;
+        for(int word = 0; word < closed.length; word++) {
+            closed[word] = occupied[word] | (blocked != null ? blocked[word] : 0);
+        }
+    }
+
+    /**
+     * Clear every board.
+     */
+    public void cleared()
+    {
+        Arrays.fill(occupied, 0);
+        if(blocked != null) {
+            System.arraycopy(blocked, 0, closed, 0, closed.length);
+        }
+        else {
+            Arrays.fill(closed, 0);
+        }
+        Arrays.fill(animals, 0);
+        Arrays.fill(plants, 0);
+        for(long[] board : species) {
+            if(board != null) {
+                Arrays.fill(board, 0);
+            }
+        }
+    }
+
+    /**
+     * @return true if the boards wrap around at the edges of the field.
+     */
+    public boolean isToroidal()
+    {
+        return toroidal;
+    }
+
+    /**
+     * @return The neighbours of the cell that are inside the field.
+     */
+    public int validMask(int row, int col)
+    {
+        if(toroidal) {
+            return ALL_NEIGHBOURS;
+        }
+        int mask = ALL_NEIGHBOURS;
+        if(row == 0) {
+            mask &= ~0x07;
+        }
+        if(row == depth - 1) {
+            mask &= ~0xE0;
+        }
+        if(col == 0) {
+            mask &= ~0x29;
+        }
+        if(col == width - 1) {
+            mask &= ~0x94;
+        }
+        return mask;
+    }
+
+    /**
+     * @return The neighbours of the cell that are empty and not blocked by terrain.
+     */
+    public int freeMask(int row, int col)
+    {
+        return validMask(row, col) & ~neighbourMask(closed, row, col);
+    }
+
+    /**
+     * @return The neighbours of the cell that hold anything.
+     */
+    public int occupiedMask(int row, int col)
+    {
+        return neighbourMask(occupied, row, col);
+    }
+
+    /**
+     * @return The neighbours of the cell that hold an animal.
+     */
+    public int animalMask(int row, int col)
+    {
+        return neighbourMask(animals, row, col);
+    }
+
+    /**
+     * @return The neighbours of the cell that hold a plant.
+     */
+    public int plantMask(int row, int col)
+    {
+        return neighbourMask(plants, row, col);
+    }
+
+    /**
+     * Return the neighbours of a cell that hold one of a set of species.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param speciesSet A set of species ids, with bit n set for species id n.
+     * @return The neighbour mask.
+     */
+    public int speciesMask(int row, int col, long speciesSet)
+    {
+        int mask = 0;
+        while(speciesSet != 0) {
+            int id = Long.numberOfTrailingZeros(speciesSet);
+            speciesSet &= speciesSet - 1;
+            long[] board = species[id];
+            if(board != null) {
+                mask |= neighbourMask(board, row, col);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Count the cells holding a species.
+     * @param speciesId The species id.
+     * @return The number of cells holding that species.
+     */
+    public int population(int speciesId)
+    {
+        long[] board = species[speciesId];
+        if(board == null) {
+            return 0;
+        }
+        int count = 0;
+        for(long word : board) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Read the eight neighbours of a cell from a board.
+     * @param board The board.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The neighbour mask.
+     */
+    private int neighbourMask(long[] board, int row, int col)
+    {
+        int above = window(board, row - 1, col);
+        int middle = window(board, row, col);
+        int below = window(board, row + 1, col);
+        return above | ((middle & 1) << 3) | ((middle & 4) << 2) | (below << 5);
+    }
+
+    /**
+     * Read the three bits of a row at the columns either side of and including col.
+     * @param board The board.
+     * @param row The row, which may be just outside the field.
+     * @param col The centre column.
+     * @return The bits for col - 1, col and col + 1 in bits 0, 1 and 2.
+     */
+    private int window(long[] board, int row, int col)
+    {
+        if(row < 0 || row >= depth) {
+            if(!toroidal) {
+                return 0;
+            }
+            row = Math.floorMod(row, depth);
+        }
+        int base = row * words;
+        if(col > 0 && col < width - 1) {
+            int start = col - 1;
+            int word = base + (start >>> 6);
+            int shift = start & 63;
+            long bits = board[word] >>> shift;
+            if(shift > 61) {
+                bits |= board[word + 1] << (64 - shift);
+            }
+            return (int) bits & 7;
+        }
+        // At the left or right edge.
+        return bit(board, base, col - 1) | (bit(board, base, col) << 1) | (bit(board, base, col + 1) << 2);
+    }
+
+    /**
+     * Read a single bit of a row, wrapping or ignoring columns outside the field.
+     */
+    private int bit(long[] board, int base, int col)
+    {
+        if(col < 0 || col >= width) {
+            if(!toroidal) {
+                return 0;
+            }
+            col = Math.floorMod(col, width);
+        }
+        return (int) (board[base + (col >>> 6)] >>> (col & 63)) & 1;
+    }
+
+    /**
+     * Return the board for a species, creating it if needed.
+     * @param speciesId The species id.
+     * @return The board.
+     */
+    private long[] board(int speciesId)
+    {
+        long[] board = species[speciesId];
+        if(board == null) {
+            board = createBoard(speciesId);
+        }
+        return board;
+    }
+
+    /**
+     * Create the board for a species, unless another thread has just done so.
+     * @param speciesId The species id.
+     * @return The board.
+     */
+    private synchronized long[] createBoard(int speciesId)
+    {
+        long[] board = species[speciesId];
+        if(board == null) {
+            board = new long[depth * words];
+            species[speciesId] = board;
+        }
+        return board;
+    }
+}
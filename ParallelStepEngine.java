@@ -0,0 +1,527 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Steps every species in a field using several threads.
+ *
+ * The field is cut into rectangular tiles and each species is handed to the
+ * tile it is standing in at the start of the step. The tiles are coloured
+ * like a checkerboard, two colours across and two down, and the step runs in
+ * one phase per colour. In a phase all tiles of that colour act at once on a
+ * ForkJoinPool. No two tiles of the same colour touch, and a tile is larger
+ * than the farthest a species can look from itself plus the farthest it can
+ * change a cell, so two tiles acting at once never look at or change the
+ * same cell. A species changes cells as far away as its neighbours, and
+ * looks as far as its neighbours or, for a predator, its perception radius.
+ * A species that moves into another tile during a step is handed to that
+ * tile at the start of the next step.
+ *
+ * Tiles are a multiple of 128 columns wide, so tiles acting at once never
+ * change the same word of the field's occupancy bitboards. On a wrapping
+ * field with an odd number of tiles along a side, the last tile along that
+ * side gets a third colour of its own.
+ *
+ * A tile whose part of the field is dormant (see ActiveTiles) after its
+ * species have acted holds only plants with no free neighbours, which do
+ * nothing but grow older. Its species rest: they are left out of the list
+ * and out of the step until something changes in or next to that part of
+ * the field, or until the first of them might die of old age. A plant that
+ * was due to spread while it rested draws its next spread again when it
+ * wakes, see Plant.wakeUp. Fields without active tiles never rest.
+ *
+ * If the field's storage cannot take changes from several threads (see
+ * FieldStorage.isTileSafe) the tiles are acted one at a time instead. So
+ * they are in a step in which a predator can see farther than the tiles
+ * were made for, which can only happen if a kind of predator first appears
+ * after the engine was made, and in a step in which the disease is still
+ * counting down, as which
+ * animal it kills first would depend on which tile got there first; that
+ * is only the first few steps in which animals are infected.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class ParallelStepEngine implements StepEngine
+{
+    // The default height of a tile, and the least width.
+    public static final int DEFAULT_TILE_SIZE = 128;
+    // Tile widths are rounded up to a multiple of this, two bitboard words.
+    private static final int TILE_ALIGNMENT = 128;
+    // The number of colours along each side: two, plus one for an odd wrapping side.
+    private static final int COLOURS = 3;
+
+    // The field being stepped.
+    private final Field field;
+    // The field's active tiles, or null if it has none.
+    private final ActiveTiles activeTiles;
+    // The pool the tiles act on.
+    private final ForkJoinPool pool;
+    // The size of a tile.
+    private final int tileRows, tileCols;
+    // The largest perception radius the tiles are large enough for.
+    private final int perceptionRadius;
+    // The number of tiles down and across a wrapping field, or zero if there is no limit.
+    private final int tilesDown, tilesAcross;
+    // Whether the tiles may act on several threads.
+    private final boolean parallel;
+    // The tiles that hold at least one species, keyed by packed tile row and column.
+    private final LongMap<Tile> tiles;
+    // The tiles in each phase, with species to act this step.
+    private final List<List<Tile>> phases;
+    // The tiles whose species are resting, in the order they went to rest.
+    private final List<Tile> resting;
+
+    /**
+     * Create an engine for a field, with tiles of the default size
+     * running on the common pool.
+     * @param field The field to step.
+     */
+    public ParallelStepEngine(Field field)
+    {
+        this(field, DEFAULT_TILE_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create an engine for a field.
+     * @param field The field to step.
+     * @param tileSize The height of a tile. The width is this rounded up to a
+     *                 multiple of 128 columns.
+     * @param pool The pool to run the tiles on.
+     */
+    public ParallelStepEngine(Field field, int tileSize, ForkJoinPool pool)
+    {
+        if(tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be greater than zero: " + tileSize);
+        }
+        this.field = field;
+        this.pool = pool;
+        activeTiles = field.getActiveTiles();
+        Topology topology = field.getTopology();
+        // A tile must be wider than the farthest a species looks plus the
+        // farthest it changes a cell, so the cells one tile looks at and
+        // the cells a tile two apart changes are never the same.
+        perceptionRadius = SpeciesParameters.getLargestPerceptionRadius();
+        int reach = topology.getReach();
+        int span = Math.max(reach, perceptionRadius) + reach + 1;
+        tileRows = Math.max(tileSize, span);
+        tileCols = (Math.max(tileSize, span) + TILE_ALIGNMENT - 1) / TILE_ALIGNMENT * TILE_ALIGNMENT;
+        if(field.isBounded() && topology.isToroidal()) {
+            // A narrow last tile on a wrapping side is merged into the tile
+            // before it, so every tile is at least full size.
+            tilesDown = Math.max(1, field.getDepth() / tileRows);
+            tilesAcross = Math.max(1, field.getWidth() / tileCols);
+        }
+        else {
+            tilesDown = 0;
+            tilesAcross = 0;
+        }
+        parallel = field.isTileSafe();
+        tiles = new LongMap<>();
+        phases = new ArrayList<>();
+        for(int phase = 0; phase < COLOURS * COLOURS; phase++) {
+            phases.add(new ArrayList<Tile>());
+        }
+        resting = new ArrayList<>();
+    }
+
+    /**
+     * Let every living species act once. Dead species are dropped from the
+     * list and newborn species are added to the end of it.
+     * @param species The species in the field.
+     */
+    public void step(List<Species> species)
+    {
+        long now = Time.getStep();
+        wake(species, now);
+        deal(species);
+        boolean together = parallel && !SimulationEngine.disease.isCountingDown()
+                           && SpeciesParameters.getLargestPerceptionRadius() <= perceptionRadius;
+        for(List<Tile> phase : phases) {
+            if(phase.isEmpty()) {
+                continue;
+            }
+            if(together && phase.size() > 1) {
+                pool.invoke(new Phase(phase));
+            }
+            else {
+                for(Tile tile : phase) {
+                    tile.compute();
+                }
+            }
+        }
+        rest(now);
+        collect(species);
+    }
+
+    /**
+     * Wake every resting species and add it back to the list, so the
+     * species can be stepped in another way.
+     * @param species The list to add the species to.
+     */
+    public void release(List<Species> species)
+    {
+        for(Tile tile : resting) {
+            tile.wake(species, Time.getStep());
+        }
+        resting.clear();
+    }
+
+    /**
+     * Count the resting species whose flags, picked out by a mask, are as
+     * given, see EntityStore.count.
+     * @param mask The flags to look at.
+     * @param value The flags wanted, among those in the mask.
+     * @return The number of resting species.
+     */
+    public int count(int mask, int value)
+    {
+        int count = 0;
+        for(Tile tile : resting) {
+            for(Species s : tile.agents) {
+                if((s.getFlags() & mask) == value) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Forget every resting species, for a simulation that is starting again.
+     */
+    public void clear()
+    {
+        for(Tile tile : resting) {
+            tile.agents.clear();
+            tile.resting = false;
+        }
+        resting.clear();
+    }
+
+    /**
+     * @return The number of rows in a tile.
+     */
+    public int getTileRows()
+    {
+        return tileRows;
+    }
+
+    /**
+     * @return The number of columns in a tile.
+     */
+    public int getTileCols()
+    {
+        return tileCols;
+    }
+
+    /**
+     * @return true if tiles act on several threads at once.
+     */
+    public boolean isParallel()
+    {
+        return parallel;
+    }
+
+    /**
+     * Wake the resting tiles whose part of the field is no longer dormant,
+     * or in which a plant might die of old age in this step, and add their
+     * species to the list.
+     * @param species The species in the field.
+     * @param now The current step.
+     */
+    private void wake(List<Species> species, long now)
+    {
+        int kept = 0;
+        for(Tile tile : resting) {
+            if(now >= tile.wakeStep || !isDormant(tile, tile.since)) {
+                tile.wake(species, now);
+            }
+            else {
+                resting.set(kept++, tile);
+            }
+        }
+        resting.subList(kept, resting.size()).clear();
+    }
+
+    /**
+     * Put the species of the tiles whose part of the field is dormant to
+     * rest, and take those tiles out of their phases.
+     * @param now The current step.
+     */
+    private void rest(long now)
+    {
+        if(activeTiles == null) {
+            return;
+        }
+        // Only changes from now on wake a resting tile.
+        int since = activeTiles.mark();
+        for(List<Tile> phase : phases) {
+            int kept = 0;
+            for(Tile tile : phase) {
+                if(tile.newborns.isEmpty() && isDormant(tile, since) && tile.rest(now, since)) {
+                    resting.add(tile);
+                }
+                else {
+                    phase.set(kept++, tile);
+                }
+            }
+            phase.subList(kept, phase.size()).clear();
+        }
+    }
+
+    /**
+     * Check whether the part of the field a tile covers is dormant.
+     * @param tile The tile.
+     * @param since A generation given by the field's active tiles.
+     * @return true if nothing in it is awake or has changed since then.
+     */
+    private boolean isDormant(Tile tile, int since)
+    {
+        int top = tile.row * tileRows;
+        int left = tile.col * tileCols;
+        int bottom = tilesDown > 0 && tile.row == tilesDown - 1 ? field.getDepth() : top + tileRows;
+        int right = tilesAcross > 0 && tile.col == tilesAcross - 1 ? field.getWidth() : left + tileCols;
+        return activeTiles.isDormant(top, left, bottom, right, since);
+    }
+
+    /**
+     * Hand every living species to the tile it is standing in, and sort the
+     * tiles into phases by colour.
+     * @param species The species in the field.
+     */
+    private void deal(List<Species> species)
+    {
+        for(List<Tile> phase : phases) {
+            phase.clear();
+        }
+        // Woken species are added to the end of the list, so it is walked by index.
+        for(int i = 0; i < species.size(); i++) {
+            Species s = species.get(i);
+            if(!s.isAlive()) {
+                continue;
+            }
+            Location location = s.getLocation();
+            int tileRow = tileOf(location.getRow(), tileRows, tilesDown);
+            int tileCol = tileOf(location.getCol(), tileCols, tilesAcross);
+            long key = Location.pack(tileRow, tileCol);
+            Tile tile = tiles.get(key);
+            if(tile == null) {
+                tile = new Tile(tileRow, tileCol);
+                tiles.put(key, tile);
+            }
+            if(tile.resting) {
+                // Something has come into the tile since it was woken.
+                tile.wake(species, Time.getStep());
+                resting.remove(tile);
+            }
+            if(tile.agents.isEmpty()) {
+                tile.reinitialize();
+                int phase = colourOf(tileRow, tilesDown) * COLOURS + colourOf(tileCol, tilesAcross);
+                phases.get(phase).add(tile);
+            }
+            tile.agents.add(s);
+        }
+    }
+
+    /**
+     * Put the species of every tile back into the list, followed by the newborns,
+     * and empty the tiles for the next step.
+     * @param species The list to fill.
+     */
+    private void collect(List<Species> species)
+    {
+        species.clear();
+        for(List<Tile> phase : phases) {
+            for(Tile tile : phase) {
+                for(Species s : tile.agents) {
+                    if(s.isAlive()) {
+                        species.add(s);
+                    }
+                }
+                tile.agents.clear();
+            }
+        }
+        for(List<Tile> phase : phases) {
+            for(Tile tile : phase) {
+                species.addAll(tile.newborns);
+                tile.newborns.clear();
+            }
+        }
+        // Forget tiles that have emptied, so an unbounded field does not keep them all.
+        if(tiles.size() > 2 * (countTiles() + resting.size())) {
+            tiles.clear();
+            for(Tile tile : resting) {
+                tiles.put(Location.pack(tile.row, tile.col), tile);
+            }
+        }
+    }
+
+    /**
+     * @return The number of tiles that acted this step.
+     */
+    private int countTiles()
+    {
+        int count = 0;
+        for(List<Tile> phase : phases) {
+            count += phase.size();
+        }
+        return count;
+    }
+
+    /**
+     * Find the tile along one side that holds a position.
+     * @param pos The row or column.
+     * @param size The size of a tile along that side.
+     * @param count The number of tiles along a wrapping side, or zero.
+     * @return The tile row or column.
+     */
+    private static int tileOf(int pos, int size, int count)
+    {
+        int tile = Math.floorDiv(pos, size);
+        if(count > 0 && tile >= count) {
+            // The narrow remainder belongs to the last full tile.
+            return count - 1;
+        }
+        return tile;
+    }
+
+    /**
+     * Colour a tile along one side.
+     * @param tile The tile row or column.
+     * @param count The number of tiles along a wrapping side, or zero.
+     * @return The colour, 0, 1 or 2.
+     */
+    private static int colourOf(int tile, int count)
+    {
+        if(count > 1 && (count & 1) == 1 && tile == count - 1) {
+            // The last tile of an odd wrapping side touches tile 0 as well as
+            // the tile before it, which have different colours.
+            return 2;
+        }
+        return Math.floorMod(tile, 2);
+    }
+
+    /**
+     * The species in one tile, acted as one task.
+     */
+    private static class Tile extends RecursiveAction
+    {
+        // The version of the serialised form, as tasks are Serializable.
+        private static final long serialVersionUID = 1L;
+
+        // The row and column of the tile.
+        final int row, col;
+        // The species standing in the tile at the start of the step, or
+        // resting in it.
+        final List<Species> agents = new ArrayList<>();
+        // The species born in the tile during the step.
+        final List<Species> newborns = new ArrayList<>();
+        // Whether the tile's species are resting.
+        boolean resting;
+        // The step the resting species must act in again.
+        long wakeStep;
+        // The generation of the field's active tiles the species went to rest in.
+        int since;
+
+        /**
+         * @param row The row of the tile.
+         * @param col The column of the tile.
+         */
+        Tile(int row, int col)
+        {
+            this.row = row;
+            this.col = col;
+        }
+
+        /**
+         * Let each living species in the tile act.
+         */
+        protected void compute()
+        {
+            for(Species s : agents) {
+                if(s.isAlive()) {
+                    s.act(newborns);
+                }
+            }
+        }
+
+        /**
+         * Put the tile's species to rest, if they are all plants, until the
+         * first of them might die of old age.
+         * @param now The current step.
+         * @param since The current generation of the field's active tiles.
+         * @return true if the species are resting.
+         */
+        boolean rest(long now, int since)
+        {
+            long wake = Long.MAX_VALUE;
+            int kept = 0;
+            for(Species s : agents) {
+                if(!s.isAlive()) {
+                    continue;
+                }
+                if(!(s instanceof Plant)) {
+                    return false;
+                }
+                wake = Math.min(wake, now + ((Plant) s).getStepsToOldAge());
+            }
+            for(Species s : agents) {
+                if(s.isAlive()) {
+                    agents.set(kept++, s);
+                }
+            }
+            agents.subList(kept, agents.size()).clear();
+            resting = true;
+            wakeStep = wake;
+            this.since = since;
+            return true;
+        }
+
+        /**
+         * Wake the tile's resting species and add the living ones to a list.
+         * @param species The list to add them to.
+         * @param now The step they act in next.
+         */
+        void wake(List<Species> species, long now)
+        {
+            for(Species s : agents) {
+                if(s.isAlive()) {
+                    s.wakeUp(now);
+                    species.add(s);
+                }
+            }
+            agents.clear();
+            resting = false;
+        }
+    }
+
+    /**
+     * All the tiles of one colour, acted at once.
+     */
+    private static class Phase extends RecursiveAction
+    {
+        // The version of the serialised form, as tasks are Serializable.
+        private static final long serialVersionUID = 1L;
+
+        // The tiles to act.
+        private final List<Tile> tiles;
+
+        /**
+         * @param tiles The tiles to act.
+         */
+        Phase(List<Tile> tiles)
+        {
+            this.tiles = tiles;
+        }
+
+        /**
+         * Act every tile and wait for them all to finish.
+         */
+        protected void compute()
+        {
+            invokeAll(tiles);
+        }
+    }
+}
@@ -1,5 +1,4 @@
 import java.util.List;
-import java.util.Random;
 /**
  * A class representing shared characteristics of plants in the simulation.
  * A plant can grow, spread to neighbouring locations, and die
@@ -9,10 +8,17 @@ import java.util.Random;
  */
 public abstract class Plant extends Species {
 
-    //A shared random number generator to control the plant spreading
-    private static final Random rand = Randomizer.getRandom();
     //All plants can be eaten by animals.
     private static final boolean EDIBLE = true;
+    //The fewest steps a plant rests for; resting costs a look at the neighbours.
+    private static final int MIN_REST = 3;
+
+    //The number of rainy steps there had been when the plant was born,
+    //counting back from its age. Plants grow an extra year in each rainy step.
+    private long birthRain;
+    //The step in which the plant next spreads, drawn in advance so that
+    //a plant does not need a random number in every step.
+    private long spreadStep;
     /**
      * Create a new plant at a location in the field
      * @param field The field currenlty occupied
@@ -22,22 +28,36 @@ public abstract class Plant extends Species {
     {
         super(field, location);
         setLocation(location);
+        spreadStep = Time.getStep() + 1 + Randomizer.geometric(getRandom(Randomizer.SPREAD),
+                                                               getParameters().getSpreadingProbability());
     }
 
     /**
-     * A plant has a probability of spreading to an adjacent location in the simulation
+     * A plant has a probability of spreading to an adjacent location in the simulation.
+     * The steps it spreads in are drawn in advance, with the same odds for each step.
      * @param newPlants A list of new plants
      */
     protected void spread(List<Species> newPlants) {
-        if(rand.nextDouble() <= getSPREADING_PROBABILITY()) {
+        long now = Time.getStep();
+        long due = getSpreadStep();
+        if(due <= now) {
             Field field = getField();
-            //Get a list of free adjacent locations and spread to them.
-            List<Location> free = field.getFreeAdjacentLocations(getLocation());
-            for (int i = 0; i < free.size(); i++) {
-                Location location = free.remove(0);
-                Plant newPlant = newPlantObject(field, location);
+            //A plant that has not acted every step may have spread in an
+            //earlier one, so the new plants are made that much older.
+            int age = (int) (now - due);
+            //Spread to the free adjacent locations. A plant spreads into
+            //half of its free neighbours, rounded up.
+            NeighbourhoodView neighbourhood = NeighbourhoodView.shared().scan(field, getLocation(), 0, null);
+            int spreads = (neighbourhood.getFreeCount() + 1) / 2;
+            for (int i = 0; i < spreads; i++) {
+                Plant newPlant = newPlantObject(field, neighbourhood.takeFree());
+                if(age > 0) {
+                    newPlant.setAge(age);
+                }
                 newPlants.add(newPlant);
             }
+            setSpreadStep(now + 1 + Randomizer.geometric(getRandom(Randomizer.SPREAD),
+                                                          getParameters().getSpreadingProbability()));
         }
     }
 
@@ -47,15 +67,152 @@ public abstract class Plant extends Species {
      * @param newPlants A list of new plants
      */
     public void act(List<Species> newPlants) {
-        incrementAge();
-        //Plants grow twice as fast when it's raining.
-        if(Simulator.weather.isRaining()) {
-            incrementAge();
-        }
-        if(age <= getMAX_AGE()) {
+        checkAge();
+        if(isAlive()) {
             spread(newPlants);
         }
+    }
+
+    /**
+     * Decide what the plant will do this step, in the same way as act,
+     * but without changing the field. The plant ages straight away; dying
+     * and spreading are added to the intents.
+     * @param intents The buffer to add the intents to.
+     */
+    public void plan(IntentBuffer intents) {
+        if(getAge() > getParameters().getMaxAge()) {
+            intents.add(IntentBuffer.DIE, this);
+            return;
+        }
+        long now = Time.getStep();
+        if(getSpreadStep() <= now) {
+            NeighbourhoodView neighbourhood = NeighbourhoodView.shared().scan(getField(), getLocation(), 0, null);
+            int spreads = (neighbourhood.getFreeCount() + 1) / 2;
+            for (int i = 0; i < spreads; i++) {
+                intents.add(IntentBuffer.BIRTH, this, neighbourhood.takeFree().getKey(), null);
+            }
+            setSpreadStep(now + 1 + Randomizer.geometric(getRandom(Randomizer.SPREAD),
+                                                          getParameters().getSpreadingProbability()));
+        }
+    }
+
+    /**
+     * Return the plant's age. Plants grow twice as fast when it's raining,
+     * so the age counts every step and every rainy step.
+     * @return The plant's age.
+     */
+    protected int getAge() {
+        EntityStore store = getStore();
+        long rain = store != null ? store.getBirthRain(getRow()) : birthRain;
+        return super.getAge() + (int) (SimulationEngine.weather.getRainySteps() - rain);
+    }
+
+    /**
+     * Set the plant's age as of the current step.
+     * @param age The age.
+     */
+    protected void setAge(int age) {
+        super.setAge(age);
+        EntityStore store = getStore();
+        if(store != null) {
+            store.setBirthRain(getRow(), SimulationEngine.weather.getRainySteps());
+        }
+        else {
+            birthRain = SimulationEngine.weather.getRainySteps();
+        }
+    }
+
+    /**
+     * A plant with no free neighbours cannot spread, so it can rest until
+     * it might die of old age. The scheduler wakes it early when a
+     * neighbouring cell is emptied.
+     * @return The step in which the plant must act again, or ACTIVE if it
+     *         must act in the next step.
+     */
+    protected long rest() {
+        if(!isAlive()) {
+            return ACTIVE;
+        }
+        //A short rest is not worth looking at the neighbours for.
+        int steps = getStepsToOldAge();
+        if(steps < MIN_REST || getField().countNeighbours(getLocation(), NeighbourCursor.FREE) > 0) {
+            return ACTIVE;
+        }
+        return Time.getStep() + steps;
+    }
 
+    /**
+     * Growing by at most two a step, a plant can pass its max age no sooner
+     * than this. A plant that has just acted has at least one step to go.
+     * @return The fewest steps until the plant might die of old age.
+     */
+    protected int getStepsToOldAge() {
+        return (getParameters().getMaxAge() + 2 - getAge()) / 2;
+    }
+
+    /**
+     * Wake the plant up to act in the given step. It had no free neighbours
+     * while it rested, so any spreading drawn for those steps is drawn again.
+     * @param step The step the plant acts in next.
+     */
+    protected void wakeUp(long step) {
+        super.wakeUp(step);
+        if(getSpreadStep() < step) {
+            setSpreadStep(step + Randomizer.geometric(getRandom(Randomizer.WAKE),
+                                                      getParameters().getSpreadingProbability()));
+        }
+    }
+
+    /**
+     * @return The step in which the plant next spreads.
+     */
+    private long getSpreadStep() {
+        EntityStore store = getStore();
+        return store != null ? store.getEventStep(getRow()) : spreadStep;
+    }
+
+    /**
+     * @param step The step in which the plant next spreads.
+     */
+    private void setSpreadStep(long step) {
+        EntityStore store = getStore();
+        if(store != null) {
+            store.setEventStep(getRow(), step);
+        }
+        else {
+            spreadStep = step;
+        }
+    }
+
+    /**
+     * Write the plant's state to a row of a store.
+     * @param store The store.
+     * @param row The row.
+     */
+    protected void saveState(EntityStore store, int row) {
+        super.saveState(store, row);
+        store.setBirthRain(row, birthRain);
+        store.setEventStep(row, spreadStep);
+    }
+
+    /**
+     * Read the plant's state back from a row of a store.
+     * @param store The store.
+     * @param row The row.
+     */
+    protected void loadState(EntityStore store, int row) {
+        super.loadState(store, row);
+        birthRain = store.getBirthRain(row);
+        spreadStep = store.getEventStep(row);
+    }
+
+    /**
+     * Create a new plant of the same kind.
+     * @param location The free location to create it in.
+     * @return The new plant.
+     */
+    protected Species createOffspring(Location location) {
+        return newPlantObject(getField(), location);
     }
 
     //abstract methods
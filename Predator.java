@@ -47,4 +47,67 @@ public abstract class Predator extends Animal{
     protected boolean getHUNTING_VISIBILITY_REQUIRED() {
         return HUNTING_VISIBILITY_REQUIRED;
     }
+
+    /**
+     * With no prey in adjacent locations, stalk the nearest prey the predator
+     * can see, or else move to any free adjacent location.
+     * @param neighbourhood The predator's neighbourhood.
+     * @return The packed key of the free location to move to, or Location.NONE if there is none.
+     */
+    protected long chooseMove(NeighbourhoodView neighbourhood)
+    {
+        long cell = stalk(neighbourhood);
+        if(cell == Location.NONE) {
+            cell = super.chooseMove(neighbourhood);
+        }
+        return cell;
+    }
+
+    /**
+     * Find the nearest prey within the predator's perception radius and
+     * choose the free adjacent location that brings the predator closest to it.
+     * @param neighbourhood The predator's neighbourhood.
+     * @return The packed key of the free location to move to, or Location.NONE
+     *         if no prey is in sight or no free location is closer to it.
+     */
+    private long stalk(NeighbourhoodView neighbourhood)
+    {
+        Field field = getField();
+        Location location = getLocation();
+        int row = location.getRow();
+        int col = location.getCol();
+        long prey = field.getSpatialIndex().findNearest(row, col, getParameters().getPerceptionRadius(),
+                                                       getEdibleSpeciesSet());
+        if(prey == Location.NONE) {
+            return Location.NONE;
+        }
+        int preyRow = Location.row(prey);
+        int preyCol = Location.col(prey);
+        long best = Location.NONE;
+        long bestDistance = distance(row, col, preyRow, preyCol);
+        for(int i = 0; i < neighbourhood.getFreeCount(); i++) {
+            long free = neighbourhood.getFree(i);
+            long d = distance(Location.row(free), Location.col(free), preyRow, preyCol);
+            if(d < bestDistance) {
+                best = free;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The squared distance between two cells.
+     */
+    private static long distance(int row1, int col1, int row2, int col2)
+    {
+        long dr = row1 - row2;
+        long dc = col1 - col2;
+        return dr * dr + dc * dc;
+    }
+
+    /**
+     * @return How far away the predator can see prey.
+     */
+    protected abstract int getPERCEPTION_RADIUS();
 }
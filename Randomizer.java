@@ -5,6 +5,11 @@ import java.util.Random;
  * randomizer, repeated runs will perform exactly the same (which helps with testing). Set 
  * 'useShared' to false to get different random behaviour every time.
  *
+ * Code that runs during a step should draw from a stream instead, see getStream.
+ * The numbers of a stream depend only on the seed, the step, an id and a purpose,
+ * not on which thread draws them or when. DeterminismCheck checks that a
+ * parallel run comes out the same on one thread and on several.
+ *
  * @author Colin Billhardt and Thom Treebus
  * @version 2021.03.03
  */
@@ -12,11 +17,43 @@ public class Randomizer
 {
     // The default seed for control of randomization.
     private static final int SEED = 1111;
+    // The seed in use, which may be changed with setSeed.
+    private static volatile long seed = SEED;
     // A shared Random object, if required.
     private static final Random rand = new Random(SEED);
     // Determine whether a shared random generator is to be provided.
     private static final boolean useShared = true;
 
+    // The purposes of the streams.
+    // Shuffling the neighbours of a cell.
+    public static final int SHUFFLE = 1;
+    // Changing the weather.
+    public static final int WEATHER = 2;
+    // Deciding whether an animal breeds, and its litter size.
+    public static final int BREED = 3;
+    // Deciding whether a plant spreads.
+    public static final int SPREAD = 4;
+    // Deciding when an animal catches a disease by chance.
+    public static final int INFECTION = 5;
+    // Deciding whether an animal passes its disease on.
+    public static final int CONTAGION = 6;
+    // Choosing the gender of a new animal.
+    public static final int GENDER = 7;
+    // Drawing again for a species that wakes from a rest.
+    public static final int WAKE = 8;
+    // Choosing the order in which the species act.
+    public static final int ORDER = 9;
+
+    // The seed the streams are made from.
+    private static volatile long streamSeed = useShared ? SEED : new Random().nextLong();
+    // The stream generator of each thread.
+    private static final ThreadLocal<CounterRandom> streams = new ThreadLocal<CounterRandom>() {
+        protected CounterRandom initialValue()
+        {
+            return newStream();
+        }
+    };
+
     /**
      * Constructor for objects of class Randomizer
      */
@@ -38,6 +75,81 @@ public class Randomizer
         }
     }
     
+    /**
+     * Provide the stream of random numbers for an id and purpose in the
+     * current step. The stream is shared by all code running on the current
+     * thread, so it must be finished with before another stream is asked for.
+     * @param id The id of whatever the numbers are for, e.g. the packed key of a cell.
+     * @param purpose What the numbers are for, e.g. BREED.
+     * @return The stream.
+     */
+    public static Random getStream(long id, int purpose)
+    {
+        return getStream(streams.get(), id, purpose);
+    }
+
+    /**
+     * Reset a generator of its own to the stream of random numbers for an id
+     * and purpose in the current step.
+     * @param generator The generator, see newStream.
+     * @param id The id of whatever the numbers are for, e.g. the packed key of a cell.
+     * @param purpose What the numbers are for, e.g. BREED.
+     * @return The generator.
+     */
+    public static Random getStream(CounterRandom generator, long id, int purpose)
+    {
+        return generator.reset(streamSeed, Time.getStep(), id, purpose);
+    }
+
+    /**
+     * Draw the number of trials that fail before the first success, in
+     * trials that each succeed with the given probability. One draw stands
+     * for a whole run of trials, so a rare event can be drawn once for all
+     * the steps or neighbours up to it rather than once for each of them,
+     * with the same odds for each.
+     * @param rand The random numbers to draw from.
+     * @param probability The probability that a trial succeeds, greater than zero.
+     * @return The number of failures before the first success.
+     */
+    public static long geometric(Random rand, double probability)
+    {
+        if(probability >= 1) {
+            return 0;
+        }
+        return (long) (Math.log(1 - rand.nextDouble()) / Math.log1p(-probability));
+    }
+
+    /**
+     * Provide a stream generator of its own, for code that needs one
+     * alongside the shared stream.
+     * @return A new generator, to be reset to a stream before use.
+     */
+    public static CounterRandom newStream()
+    {
+        return new CounterRandom();
+    }
+
+    /**
+     * Change the seed, so a run can be repeated with a seed of its own.
+     * The shared Random generator is reset to the new seed, and streams
+     * are made from it from now on.
+     * @param newSeed The new seed.
+     */
+    public static void setSeed(long newSeed)
+    {
+        seed = newSeed;
+        streamSeed = newSeed;
+        rand.setSeed(newSeed);
+    }
+
+    /**
+     * @return The seed in use.
+     */
+    public static long getSeed()
+    {
+        return seed;
+    }
+
     /**
      * Reset the randomization.
      * This will have no effect if randomization is not through
@@ -46,7 +158,7 @@ public class Randomizer
     public static void reset()
     {
         if(useShared) {
-            rand.setSeed(SEED);
+            rand.setSeed(seed);
         }
     }
 }
@@ -0,0 +1,195 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps count of each species in the field, both in total and, on request,
+ * within any rectangle of the field.
+ *
+ * The totals are kept up to date on every change. For rectangle counts a
+ * species gets a two-dimensional Fenwick tree over the field, built from the
+ * field's storage the first time that species is asked about and then kept
+ * up to date along with the totals. Updating a tree and counting a rectangle
+ * both take time proportional to log(depth) * log(width).
+ *
+ * Changes may come from several threads at once. Each total is a LongAdder,
+ * which spreads the changes of busy threads over counters on cache lines of
+ * their own and adds them up when the total is read, so tile threads do not
+ * fight over one shared counter. Trees should only be asked for between
+ * steps, not while the field is being changed.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class RegionCounts implements FieldIndex
+{
+    // The storage of the field, read when a tree is first built.
+    private final FieldStorage storage;
+    // The size of the field, zero if unbounded.
+    private final int depth, width;
+    // The number of cells holding each species.
+    private final LongAdder[] totals;
+    // The Fenwick tree of each species, or null if it has not been asked for.
+    private final int[][] trees;
+
+    /**
+     * Create the counts for an empty field.
+     * @param storage The storage of the field.
+     */
+    public RegionCounts(FieldStorage storage)
+    {
+        this.storage = storage;
+        depth = storage.getDepth();
+        width = storage.getWidth();
+        totals = new LongAdder[SpeciesRegistry.MAX_SPECIES + 1];
+        for(int id = 0; id < totals.length; id++) {
+            totals[id] = new LongAdder();
+        }
+        trees = new int[SpeciesRegistry.MAX_SPECIES + 1][];
+    }
+
+    /**
+     * Update the counts for a changed cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param oldSpeciesId The species id before the change.
+     * @param newSpeciesId The species id after the change.
+     */
+    public void cellChanged(int row, int col, int oldSpeciesId, int newSpeciesId)
+    {
+        if(oldSpeciesId != SpeciesRegistry.EMPTY) {
+            totals[oldSpeciesId].decrement();
+            if(trees[oldSpeciesId] != null) {
+                add(trees[oldSpeciesId], row, col, -1);
+            }
+        }
+        if(newSpeciesId != SpeciesRegistry.EMPTY) {
+            totals[newSpeciesId].increment();
+            if(trees[newSpeciesId] != null) {
+                add(trees[newSpeciesId], row, col, 1);
+            }
+        }
+    }
+
+    /**
+     * Set every count to zero.
+     */
+    public void cleared()
+    {
+        for(int id = 0; id < totals.length; id++) {
+            totals[id].reset();
+            if(trees[id] != null) {
+                Arrays.fill(trees[id], 0);
+            }
+        }
+    }
+
+    /**
+     * @param speciesId The species id.
+     * @return The number of cells in the field holding that species.
+     */
+    public int getTotal(int speciesId)
+    {
+        return totals[speciesId].intValue();
+    }
+
+    /**
+     * Count the cells holding a species inside a rectangle. Parts of the
+     * rectangle outside the field are ignored. Only available for bounded fields.
+     * @param speciesId The species id.
+     * @param top The first row of the rectangle.
+     * @param left The first column of the rectangle.
+     * @param bottom The last row of the rectangle.
+     * @param right The last column of the rectangle.
+     * @return The number of cells in the rectangle holding that species.
+     */
+    public int count(int speciesId, int top, int left, int bottom, int right)
+    {
+        if(!storage.isBounded()) {
+            throw new IllegalStateException("Rectangle counts need a bounded field");
+        }
+        top = Math.max(top, 0);
+        left = Math.max(left, 0);
+        bottom = Math.min(bottom, depth - 1);
+        right = Math.min(right, width - 1);
+        if(top > bottom || left > right || (trees[speciesId] == null && totals[speciesId].sum() == 0)) {
+            return 0;
+        }
+        int[] tree = tree(speciesId);
+        synchronized(tree) {
+            return prefix(tree, bottom, right) - prefix(tree, top - 1, right)
+                   - prefix(tree, bottom, left - 1) + prefix(tree, top - 1, left - 1);
+        }
+    }
+
+    /**
+     * Return the tree of a species, building it if needed.
+     * @param speciesId The species id.
+     * @return The tree.
+     */
+    private synchronized int[] tree(final int speciesId)
+    {
+        int[] tree = trees[speciesId];
+        if(tree == null) {
+            final int[] cells = new int[depth * width];
+            storage.forEachOccupied(new CellVisitor() {
+                public void visit(int row, int col, int id, Object occupant)
+                {
+                    if(id == speciesId) {
+                        cells[row * width + col] = 1;
+                    }
+                }
+            });
+            // Build the tree in place: first along each row, then down each column.
+            for(int row = 0; row < depth; row++) {
+                int base = row * width;
+                for(int col = 0; col < width; col++) {
+                    int parent = col | (col + 1);
+                    if(parent < width) {
+                        cells[base + parent] += cells[base + col];
+                    }
+                }
+            }
+            for(int row = 0; row < depth; row++) {
+                int parent = row | (row + 1);
+                if(parent < depth) {
+                    for(int col = 0; col < width; col++) {
+                        cells[parent * width + col] += cells[row * width + col];
+                    }
+                }
+            }
+            tree = cells;
+            trees[speciesId] = tree;
+        }
+        return tree;
+    }
+
+    /**
+     * Add to the count of one cell in a tree.
+     */
+    private void add(int[] tree, int row, int col, int delta)
+    {
+        synchronized(tree) {
+            for(int i = row; i < depth; i |= i + 1) {
+                int base = i * width;
+                for(int j = col; j < width; j |= j + 1) {
+                    tree[base + j] += delta;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The count of the rectangle from the top left corner to the given cell.
+     */
+    private int prefix(int[] tree, int row, int col)
+    {
+        int sum = 0;
+        for(int i = row; i >= 0; i = (i & (i + 1)) - 1) {
+            int base = i * width;
+            for(int j = col; j >= 0; j = (j & (j + 1)) - 1) {
+                sum += tree[base + j];
+            }
+        }
+        return sum;
+    }
+}
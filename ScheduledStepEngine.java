@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Steps the species one by one, like the Simulator does, but lets species
+ * that have nothing to do rest through the steps until they do.
+ *
+ * After each step, every species that can rest (see Species.rest) is taken
+ * out of the list and handed to a WakeScheduler until the step it gave.
+ * A healthy animal that will be asleep rests until it wakes up, dies of old
+ * age or catches a disease. A plant with no free neighbours cannot spread,
+ * so it rests until it might die of old age. Ages are worked out from the
+ * step of birth, so nothing needs catching up when a species wakes.
+ *
+ * Some changes wake a resting species early, for the next step: a sleeping
+ * animal that is infected by a neighbour, and a plant next to a cell that is
+ * emptied. A resting species that is eaten is simply forgotten. Species woken
+ * in a step act after the others.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class ScheduledStepEngine implements StepEngine, FieldIndex
+{
+    // The field being stepped.
+    private final Field field;
+    // The resting species.
+    private final WakeScheduler scheduler;
+    // The species born in the current step.
+    private final List<Species> newborns;
+    // A cursor of its own, for looking around emptied cells while species act.
+    // The order does not matter, so it does not shuffle.
+    private final NeighbourCursor cursor;
+
+    /**
+     * Create an engine for a field, with no resting species.
+     * The engine watches the field for emptied cells until it is released.
+     * @param field The field to step.
+     */
+    public ScheduledStepEngine(Field field)
+    {
+        this.field = field;
+        scheduler = new WakeScheduler();
+        newborns = new ArrayList<>();
+        cursor = new NeighbourCursor(false);
+        field.addIndex(this);
+    }
+
+    /**
+     * Wake the species due in this step, let every living species act, and
+     * then put the species that can rest to rest. Dead and resting species
+     * are dropped from the list and newborn species are added to the end of it.
+     * @param species The species that are active.
+     */
+    public void step(List<Species> species)
+    {
+        long now = Time.getStep();
+        scheduler.wakeDue(now, species);
+        for(int i = 0; i < species.size(); i++) {
+            Species s = species.get(i);
+            if(s.isAlive()) {
+                s.act(newborns);
+            }
+        }
+
+        int kept = 0;
+        for(int i = 0; i < species.size(); i++) {
+            Species s = species.get(i);
+            if(!s.isAlive()) {
+                continue;
+            }
+            long wake = s.rest();
+            if(wake != Species.ACTIVE) {
+                scheduler.schedule(s, wake);
+                continue;
+            }
+            species.set(kept++, s);
+        }
+        species.subList(kept, species.size()).clear();
+        species.addAll(newborns);
+        newborns.clear();
+    }
+
+    /**
+     * Wake every resting species and add it back to the list, and stop
+     * watching the field, so the species can be stepped in another way.
+     * @param species The list to add the species to.
+     */
+    public void release(List<Species> species)
+    {
+        scheduler.wakeAll(species);
+        field.removeIndex(this);
+    }
+
+    /**
+     * Count the resting species whose flags, picked out by a mask, are as
+     * given, see EntityStore.count.
+     * @param mask The flags to look at.
+     * @param value The flags wanted, among those in the mask.
+     * @return The number of resting species.
+     */
+    public int count(int mask, int value)
+    {
+        return scheduler.count(mask, value);
+    }
+
+    /**
+     * Forget every resting species, for a simulation that is starting again.
+     */
+    public void clear()
+    {
+        scheduler.clear();
+    }
+
+    /**
+     * Wake the resting plants next to a cell that has been emptied,
+     * as they may now be able to spread.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param oldSpeciesId The species id before the change.
+     * @param newSpeciesId The species id after the change.
+     */
+    public void cellChanged(int row, int col, int oldSpeciesId, int newSpeciesId)
+    {
+        if(newSpeciesId != SpeciesRegistry.EMPTY) {
+            return;
+        }
+        cursor.start(field, row, col, NeighbourCursor.PLANT);
+        while(cursor.next()) {
+            Species plant = (Species) cursor.getObject();
+            if(plant.getWakeStep() != Species.ACTIVE) {
+                plant.wakeEarly();
+            }
+        }
+    }
+
+    /**
+     * Nothing to do when the field is emptied; the resting species are
+     * forgotten by clear.
+     */
+    public void cleared()
+    {
+    }
+}
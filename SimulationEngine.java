@@ -0,0 +1,448 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A savanna simulation without any user interface: a field of animals and
+ * plants that can be reset, stepped and looked at. The Simulator puts a
+ * window on top of it, and the BatchRunner runs it from the command line.
+ *
+ * Anything that wants to hear about each step, such as a SimulatorView,
+ * can be added as a SimulationListener.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class SimulationEngine
+{
+    // Fields with more cells than this are stored in chunks, as most of a large field is empty.
+    private static final long MAX_FLAT_FIELD_AREA = 16000000L;
+    // The largest depth and width of the part of a chunked field that is
+    // populated at the start, so seeding takes time and memory for at most
+    // MAX_FLAT_FIELD_AREA cells however large the field is.
+    private static final int MAX_SEEDED_SIZE = 4000;
+    // The number of steps between changes of weather.
+    private static final int WEATHER_STEPS = 5;
+    // The probability that a Lion will be created in any given grid position.
+    private static final double LION_CREATION_PROBABILITY = 0.015;
+    // The probability that a Lion will be created in any given grid position.
+    private static final double CHEETAH_CREATION_PROBABILITY = 0.015;
+
+    // The probability that a gazelle will be created in any given grid position.
+    private static final double GAZELLE_CREATION_PROBABILITY = 0.03;
+    // The probability that a zebra will be created in any given grid position.
+    private static final double ZEBRA_CREATION_PROBABILITY = 0.02;
+    // The probability that a giraffe will be created in any given grid position.
+    private static final double GIRAFFE_CREATION_PROBABILITY = 0.02;
+    // The probability that grass will be created in any given grid position.
+    private static final double GRASS_CREATION_PROBABILITY = 0.04;
+    // The probability that an acacia tree will be created in any given grid position.
+    private static final double ACACIA_CREATION_PROBABILITY = 0.04;
+
+    //Object to control the weather in the simulation.
+    static Weather weather = new Weather();
+    //Object to control disease in the simulation.
+    static Disease disease = new Disease();
+
+    // List of animals in the field.
+    private final SpeciesPool species;
+    // The current state of the field.
+    private final Field field;
+    // The current step of the simulation.
+    private int step;
+    //The object to keep track of time in the simulation
+    private Time time;
+    // Steps the species, or null to step them one by one here.
+    private StepEngine engine;
+    // The listeners told about each step.
+    private final List<SimulationListener> listeners;
+
+    /**
+     * Create a simulation of grass only with the given size.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     */
+    public SimulationEngine(int depth, int width)
+    {
+        this(depth, width, null);
+    }
+
+    /**
+     * Create a simulation with the given size, laid over the given terrain.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param terrain The terrain, the same size as the field, or null for grass only.
+     */
+    public SimulationEngine(int depth, int width, Terrain terrain)
+    {
+        if(width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("The dimensions must be greater than zero: "
+                                               + depth + " x " + width);
+        }
+        species = new SpeciesPool();
+        if((long) depth * width > MAX_FLAT_FIELD_AREA) {
+            field = new Field(new ChunkedFieldStorage(depth, width));
+        }
+        else {
+            field = new Field(depth, width);
+        }
+        field.setTerrain(terrain);
+        listeners = new ArrayList<>();
+
+        // Setup a valid starting point.
+        reset();
+    }
+
+    /**
+     * Add a listener to be told about every step from now on.
+     * @param listener The listener.
+     */
+    public void addListener(SimulationListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stop telling a listener about the steps.
+     * @param listener The listener.
+     */
+    public void removeListener(SimulationListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Run the simulation from its current state for the given number of steps.
+     * Stop before the given number of steps if it ceases to be viable.
+     * @param numSteps The number of steps to run for.
+     * @return The number of steps run.
+     */
+    public int run(int numSteps)
+    {
+        int steps = 0;
+        while(steps < numSteps && isViable()) {
+            step();
+            steps++;
+        }
+        return steps;
+    }
+
+    /**
+     * Run the simulation from its current state for a single step.
+     * Iterate over the whole field updating the state of each
+     * species, then tell the listeners.
+     */
+    public void step()
+    {
+        step++;
+        time.incrementStep();
+        weather.countStep();
+
+        if(engine != null) {
+            engine.step(species);
+        }
+        else {
+            // Provide space for newborn species.
+            List<Species> newSpecies = species.getNewborns();
+
+            // Let all species act. Those that die are left in place until the end of the step.
+            for(int i = 0; i < species.size(); i++) {
+                Species s = species.get(i);
+                if(s.isAlive()) {
+                    s.act(newSpecies);
+                }
+            }
+
+            // Drop the dead and add the newly born species to the main lists.
+            species.compact();
+            species.addNewborns();
+        }
+
+        showStatus();
+
+        if(step % WEATHER_STEPS == 0) {
+            weather.updateWeather();
+        }
+    }
+
+    /**
+     * Reset the simulation to a starting position.
+     */
+    public void reset()
+    {
+        step = 0;
+        time = new Time();
+        // The weather and the disease are shared, so start them afresh too.
+        weather = new Weather();
+        disease = new Disease();
+        species.clear();
+        if(engine instanceof ScheduledStepEngine) {
+            ((ScheduledStepEngine) engine).clear();
+        }
+        else if(engine instanceof ParallelStepEngine) {
+            ((ParallelStepEngine) engine).clear();
+        }
+        populate();
+
+        // Show the starting state to the listeners.
+        showStatus();
+    }
+
+    /**
+     * Choose whether to step the species on several threads, using a
+     * ParallelStepEngine, or one by one on the calling thread.
+     * @param parallel true to step in parallel.
+     */
+    public void setParallel(boolean parallel)
+    {
+        setStepEngine(parallel ? new ParallelStepEngine(field) : null);
+    }
+
+    /**
+     * Step the species with a ParallelStepEngine on a pool of its own with
+     * the given number of threads, rather than on the common pool.
+     * @param threads The number of threads. Must be greater than zero.
+     */
+    public void setParallelism(int threads)
+    {
+        setStepEngine(new ParallelStepEngine(field, ParallelStepEngine.DEFAULT_TILE_SIZE,
+                                             new ForkJoinPool(threads)));
+    }
+
+    /**
+     * Choose whether to step the species with the intent and commit model of
+     * an IntentStepEngine, or one by one on the calling thread.
+     * @param intents true to plan and commit intents.
+     */
+    public void setIntentModel(boolean intents)
+    {
+        setStepEngine(intents ? new IntentStepEngine() : null);
+    }
+
+    /**
+     * Choose whether to let sleeping animals and crowded plants skip steps,
+     * using a ScheduledStepEngine, or to step every species every step.
+     * @param scheduled true to let species skip steps.
+     */
+    public void setScheduled(boolean scheduled)
+    {
+        setStepEngine(scheduled ? new ScheduledStepEngine(field) : null);
+    }
+
+    /**
+     * Choose how often the plants act, using a MultiRateStepEngine, while the
+     * animals act every step. With an interval of 1 the results are the same
+     * as stepping every species every step, one by one.
+     * @param interval The number of steps between the turns of a plant.
+     *                 Must be greater than zero.
+     */
+    public void setPlantInterval(int interval)
+    {
+        setStepEngine(new MultiRateStepEngine(interval));
+    }
+
+    /**
+     * Choose whether to skip the species that have nothing to do, telling
+     * them apart from their state in the EntityStore with a BatchStepEngine,
+     * or to step every species one by one. Both give the same results.
+     * @param batch true to skip the species with nothing to do.
+     */
+    public void setBatch(boolean batch)
+    {
+        setStepEngine(batch ? new BatchStepEngine() : null);
+    }
+
+    /**
+     * Choose whether to step the species one kind at a time, in a shuffled
+     * order, using a TypeBatchedStepEngine, or one by one in the order of
+     * the list.
+     * @param typeBatched true to step the species one kind at a time.
+     */
+    public void setTypeBatched(boolean typeBatched)
+    {
+        setStepEngine(typeBatched ? new TypeBatchedStepEngine() : null);
+    }
+
+    /**
+     * Change the way the species are stepped. Species resting in a
+     * ScheduledStepEngine or a ParallelStepEngine are woken and put back in
+     * the list first.
+     * @param newEngine The new engine, or null to step them one by one here.
+     */
+    private void setStepEngine(StepEngine newEngine)
+    {
+        if(engine instanceof ScheduledStepEngine) {
+            ((ScheduledStepEngine) engine).release(species);
+        }
+        else if(engine instanceof ParallelStepEngine) {
+            ((ParallelStepEngine) engine).release(species);
+        }
+        engine = newEngine;
+    }
+
+    /**
+     * Determine whether the simulation should continue to run.
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable()
+    {
+        int nonZero = 0;
+        for(int id = 1; id <= SpeciesRegistry.getMaxId(); id++) {
+            if(field.getPopulation(id) > 0) {
+                nonZero++;
+            }
+        }
+        return nonZero > 1;
+    }
+
+    /**
+     * @return The current step of the simulation.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The field of the simulation.
+     */
+    public Field getField()
+    {
+        return field;
+    }
+
+    /**
+     * @return The current hour.
+     */
+    public int getHour()
+    {
+        return time.getHour();
+    }
+
+    /**
+     * @return The current weather.
+     */
+    public Weather getWeather()
+    {
+        return weather;
+    }
+
+    /**
+     * @return The disease.
+     */
+    public Disease getDisease()
+    {
+        return disease;
+    }
+
+    /**
+     * @return The number of living animals and plants.
+     */
+    public int getPopulation()
+    {
+        int total = 0;
+        for(int id = 1; id <= SpeciesRegistry.getMaxId(); id++) {
+            total += field.getPopulation(id);
+        }
+        return total;
+    }
+
+    /**
+     * Count the species whose flags, picked out by a mask, are as given.
+     * For example count(EntityStore.ALIVE | EntityStore.INFECTED | EntityStore.FEMALE,
+     * EntityStore.ALIVE | EntityStore.INFECTED | EntityStore.FEMALE) counts the
+     * living infected females.
+     * @param mask The flags to look at, see EntityStore.
+     * @param value The flags wanted, among those in the mask.
+     * @return The number of species.
+     */
+    public int count(int mask, int value)
+    {
+        int count = species.count(mask, value);
+        if(engine instanceof ScheduledStepEngine) {
+            count += ((ScheduledStepEngine) engine).count(mask, value);
+        }
+        else if(engine instanceof ParallelStepEngine) {
+            count += ((ParallelStepEngine) engine).count(mask, value);
+        }
+        return count;
+    }
+
+    /**
+     * Tell every listener about the current state.
+     */
+    private void showStatus()
+    {
+        for(SimulationListener listener : listeners) {
+            listener.showStatus(step, field, time.getHour(), weather, disease);
+        }
+    }
+
+    /**
+     * Randomly populate the field with preadators and prey. A field stored
+     * in chunks is only populated in a square in its middle, at most
+     * MAX_SEEDED_SIZE across, and left empty elsewhere for the species to
+     * spread into, as visiting every cell of a field that large would take
+     * too long and fill far too many chunks.
+     */
+    private void populate()
+    {
+        Random rand = Randomizer.getRandom();
+        field.clear();
+        int depth = field.getDepth();
+        int width = field.getWidth();
+        int firstRow = 0;
+        int firstCol = 0;
+        if((long) depth * width > MAX_FLAT_FIELD_AREA) {
+            firstRow = Math.max(0, (depth - MAX_SEEDED_SIZE) / 2);
+            firstCol = Math.max(0, (width - MAX_SEEDED_SIZE) / 2);
+            depth = Math.min(depth, MAX_SEEDED_SIZE);
+            width = Math.min(width, MAX_SEEDED_SIZE);
+        }
+        for(int row = firstRow; row < firstRow + depth; row++) {
+            for(int col = firstCol; col < firstCol + width; col++) {
+                if(!field.isPassable(row, col)) {
+                    // Nothing can live on water or rock.
+                    continue;
+                }
+                if(rand.nextDouble() <= GIRAFFE_CREATION_PROBABILITY) {
+                    Location location = field.getLocation(row, col);
+                    Giraffe giraffe = new Giraffe(true, field, location);
+                    species.add(giraffe);
+                }
+                else if(rand.nextDouble() <= ZEBRA_CREATION_PROBABILITY) {
+                    Location location = field.getLocation(row, col);
+                    Zebra zebra = new Zebra(true, field, location);
+                    species.add(zebra);
+                }
+                else if(rand.nextDouble() <= GAZELLE_CREATION_PROBABILITY) {
+                    Location location = field.getLocation(row, col);
+                    Gazelle gazelle = new Gazelle(true, field, location);
+                    species.add(gazelle);
+                }
+                else if(rand.nextDouble() <= GRASS_CREATION_PROBABILITY) {
+                    Location location = field.getLocation(row, col);
+                    Grass grass = new Grass(field, location);
+                    species.add(grass);
+                }
+                else if(rand.nextDouble() <= ACACIA_CREATION_PROBABILITY) {
+                    Location location = field.getLocation(row, col);
+                    Acacia acacia = new Acacia(field, location);
+                    species.add(acacia);
+                }
+                else if(rand.nextDouble() <= LION_CREATION_PROBABILITY) {
+                    Location location = field.getLocation(row, col);
+                    Lion lion = new Lion(true, field, location);
+                    species.add(lion);
+                }
+                else if(rand.nextDouble() <= CHEETAH_CREATION_PROBABILITY) {
+                    Location location = field.getLocation(row, col);
+                    Cheetah cheetah = new Cheetah(true, field, location);
+                    species.add(cheetah);
+                }
+                // else leave the location empty.
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Something that wants to hear about a SimulationEngine's progress,
+ * such as a SimulatorView showing the field in a window.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public interface SimulationListener
+{
+    /**
+     * Called after the simulation has been reset and after each step.
+     * @param step Which iteration step it is.
+     * @param field The field of the simulation.
+     * @param time The current hour.
+     * @param weather The current weather.
+     * @param disease The disease.
+     */
+    void showStatus(int step, Field field, int time, Weather weather, Disease disease);
+}
@@ -1,12 +1,10 @@
-import java.util.Random;
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.awt.Color;
 
 /**
  * A simple savanna biome simulator, based on a rectangular field
- * containing animals(predators and prey) and plants.
+ * containing animals(predators and prey) and plants, shown in a window.
+ * The simulation itself is run by a SimulationEngine, with the window
+ * listening to it.
  * 
  * @author Colin Billhardt and Thom Treebus
  * @version 2021.03.03
@@ -18,34 +16,9 @@ public class Simulator
     private static final int DEFAULT_WIDTH = 200;
     // The default depth of the grid.
     private static final int DEFAULT_DEPTH = 135;
-    // The probability that a Lion will be created in any given grid position.
-    private static final double LION_CREATION_PROBABILITY = 0.015;
-    // The probability that a Lion will be created in any given grid position.
-    private static final double CHEETAH_CREATION_PROBABILITY = 0.015;
-
-    // The probability that a gazelle will be created in any given grid position.
-    private static final double GAZELLE_CREATION_PROBABILITY = 0.03;
-    // The probability that a zebra will be created in any given grid position.
-    private static final double ZEBRA_CREATION_PROBABILITY = 0.02;
-    // The probability that a giraffe will be created in any given grid position.
-    private static final double GIRAFFE_CREATION_PROBABILITY = 0.02;
-    // The probability that grass will be created in any given grid position.
-    private static final double GRASS_CREATION_PROBABILITY = 0.04;
-    // The probability that an acacia tree will be created in any given grid position.
-    private static final double ACACIA_CREATION_PROBABILITY = 0.04;
-
-    // List of animals in the field.
-    private List<Species> species;
-    // The current state of the field.
-    private Field field;
-    // The current step of the simulation.
-    private int step;
-    //The object to keep track of time in the simulation
-    Time time = new Time();
-    //Object to control the weather in the simulation.
-    static Weather weather = new Weather();
-    //Object to control disease in the simulation.
-    static Disease disease = new Disease();
+
+    // The simulation being shown.
+    private SimulationEngine engine;
     // A graphical view of the simulation.
     private SimulatorView view;
 
@@ -63,16 +36,27 @@ public class Simulator
      * @param width Width of the field. Must be greater than zero.
      */
     public Simulator(int depth, int width)
+    {
+        this(depth, width, null);
+    }
+
+    /**
+     * Create a simulation field with the given size, laid over the given terrain.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param terrain The terrain, the same size as the field, or null for grass only.
+     */
+    public Simulator(int depth, int width, Terrain terrain)
     {
         if(width <= 0 || depth <= 0) {
             System.out.println("The dimensions must be greater than zero.");
             System.out.println("Using default values.");
             depth = DEFAULT_DEPTH;
             width = DEFAULT_WIDTH;
+            terrain = null;
         }
 
-        species = new ArrayList<>();
-        field = new Field(depth, width);
+        engine = new SimulationEngine(depth, width, terrain);
 
         // Create a view of the state of each location in the field.
         view = new SimulatorView(depth, width);
@@ -83,12 +67,11 @@ public class Simulator
         view.setColor(Giraffe.class, Color.MAGENTA);
         view.setColor(Grass.class, Color.GREEN);
         view.setColor(Acacia.class, Color.ORANGE);
+        engine.addListener(view);
 
-        //Update the weather
-        weather.updateWeather();
-
-        // Setup a valid starting point.
-        reset();
+        // Show the starting state in the view.
+        view.showStatus(engine.getStep(), engine.getField(), engine.getHour(),
+                        engine.getWeather(), engine.getDisease());
     }
 
     /**
@@ -107,14 +90,9 @@ public class Simulator
      */
     public void simulate(int numSteps)
     {
-        for(int step = 1; step <= numSteps && view.isViable(field); step++) {
+        for(int step = 1; step <= numSteps && engine.isViable(); step++) {
             simulateOneStep();
             delay(60);   // uncomment this to run more slowly
-
-            //Update the weather every 5 steps.
-            if(step % 5 == 0) {
-                weather.updateWeather();
-            }
         }
     }
 
@@ -125,28 +103,68 @@ public class Simulator
      */
     public void simulateOneStep()
     {
-        step++;
-        if(step % 5 == 0){
-            time.incrementHour();
-        }
+        engine.step();
+    }
 
-        // Provide space for newborn species.
-        List<Species> newSpecies = new ArrayList<>();
-
-        // Let all species act.
-        for(Iterator<Species> it = species.iterator(); it.hasNext(); ) {
-            Species s = it.next();
-            if(!s.isAlive()) {
-                it.remove();
-            }else {
-                s.act(newSpecies);
-            }
-        }
+    /**
+     * Choose whether to step the species on several threads, using a
+     * ParallelStepEngine, or one by one on the calling thread.
+     * @param parallel true to step in parallel.
+     */
+    public void setParallel(boolean parallel)
+    {
+        engine.setParallel(parallel);
+    }
+
+    /**
+     * Choose whether to step the species with the intent and commit model of
+     * an IntentStepEngine, or one by one on the calling thread.
+     * @param intents true to plan and commit intents.
+     */
+    public void setIntentModel(boolean intents)
+    {
+        engine.setIntentModel(intents);
+    }
+
+    /**
+     * Choose whether to let sleeping animals and crowded plants skip steps,
+     * using a ScheduledStepEngine, or to step every species every step.
+     * @param scheduled true to let species skip steps.
+     */
+    public void setScheduled(boolean scheduled)
+    {
+        engine.setScheduled(scheduled);
+    }
+
+    /**
+     * Choose how often the plants act, while the animals act every step.
+     * With an interval of 1 the results are the same as stepping every
+     * species every step.
+     * @param interval The number of steps between the turns of a plant.
+     */
+    public void setPlantInterval(int interval)
+    {
+        engine.setPlantInterval(interval);
+    }
 
-        // Add the newly born species to the main lists.
-        species.addAll(newSpecies);
+    /**
+     * Choose whether to skip the species that have nothing to do in a step,
+     * using a BatchStepEngine, or to step every species one by one.
+     * @param batch true to skip the species with nothing to do.
+     */
+    public void setBatch(boolean batch)
+    {
+        engine.setBatch(batch);
+    }
 
-        view.showStatus(step, field, time.getHour(), weather, disease);
+    /**
+     * Choose whether to step the species one kind at a time, in a shuffled
+     * order, using a TypeBatchedStepEngine, or one by one.
+     * @param typeBatched true to step the species one kind at a time.
+     */
+    public void setTypeBatched(boolean typeBatched)
+    {
+        engine.setTypeBatched(typeBatched);
     }
 
     /**
@@ -154,61 +172,15 @@ public class Simulator
      */
     public void reset()
     {
-        step = 0;
-        species.clear();
-        populate();
-
-        // Show the starting state in the view.
-        view.showStatus(step, field, time.getHour(), weather, disease);
+        engine.reset();
     }
 
     /**
-     * Randomly populate the field with preadators and prey.
+     * @return The simulation being shown.
      */
-    private void populate()
-    {
-        Random rand = Randomizer.getRandom();
-        field.clear();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                if(rand.nextDouble() <= GIRAFFE_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Giraffe giraffe = new Giraffe(true, field, location);
-                    species.add(giraffe);
-                }
-                else if(rand.nextDouble() <= ZEBRA_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Zebra zebra = new Zebra(true, field, location);
-                    species.add(zebra);
-                }
-                else if(rand.nextDouble() <= GAZELLE_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Gazelle gazelle = new Gazelle(true, field, location);
-                    species.add(gazelle);
-                }
-                else if(rand.nextDouble() <= GRASS_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Grass grass = new Grass(field, location);
-                    species.add(grass);
-                }
-                else if(rand.nextDouble() <= ACACIA_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Acacia acacia = new Acacia(field, location);
-                    species.add(acacia);
-                }
-                else if(rand.nextDouble() <= LION_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Lion lion = new Lion(true, field, location);
-                    species.add(lion);
-                }
-                else if(rand.nextDouble() <= CHEETAH_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Cheetah cheetah = new Cheetah(true, field, location);
-                    species.add(cheetah);
-                }
-                // else leave the location empty.
-            }
-        }
+    public SimulationEngine getEngine()
+    {
+        return engine;
     }
 
     /**
@@ -14,10 +14,13 @@ import java.util.Map;
  * @author Colin Billhardt and Thom Treebus
  * @version 2021.03.03
  */
-public class SimulatorView extends JFrame
+public class SimulatorView extends JFrame implements SimulationListener
 {
     // Colors used for empty locations.
     private static final Color EMPTY_COLOR = Color.white;
+    // Colors used for cells of water and rock.
+    private static final Color WATER_COLOR = new Color(120, 170, 230);
+    private static final Color ROCK_COLOR = Color.lightGray;
 
     // Color used for objects that have no defined color.
     private static final Color UNKNOWN_COLOR = Color.gray;
@@ -35,8 +38,13 @@ public class SimulatorView extends JFrame
     
     // A map for storing colors for participants in the simulation
     private Map<Class, Color> colors;
+    // The same colors, indexed by species id.
+    private Color[] colorsById;
     // A statistics object computing and storing simulation information
     private FieldStats stats;
+    // The field last drawn, and the generation of its active tiles when it was drawn.
+    private Field drawnField;
+    private int drawnGeneration;
 
     /**
      * Create a view of the given width and height.
@@ -47,6 +55,7 @@ public class SimulatorView extends JFrame
     {
         stats = new FieldStats();
         colors = new LinkedHashMap<>();
+        colorsById = new Color[SpeciesRegistry.MAX_SPECIES + 1];
 
         setTitle("Savanna Simulator");
         //Different labels for each statistic
@@ -99,9 +108,10 @@ public class SimulatorView extends JFrame
      * @param animalClass The animal's Class object.
      * @param color The color to be used for the given class.
      */
-    public void setColor(Class animalClass, Color color)
+    public void setColor(Class<? extends Species> animalClass, Color color)
     {
         colors.put(animalClass, color);
+        colorsById[SpeciesRegistry.getId(animalClass)] = color;
     }
 
     /**
@@ -113,13 +123,53 @@ public class SimulatorView extends JFrame
     }
 
     /**
-     * @return The color to be used for a given class of animal.
+     * Draw the cells of a terrain that are not grass.
+     * @param terrain The terrain, or null if there is none.
      */
-    private Color getColor(Class animalClass)
+    private void drawTerrain(Terrain terrain)
     {
-        Color col = colors.get(animalClass);
+        if(terrain != null) {
+            drawTerrain(terrain, 0, 0, terrain.getDepth(), terrain.getWidth());
+        }
+    }
+
+    /**
+     * Draw the cells of a terrain that are not grass, within a rectangle.
+     * @param terrain The terrain, or null if there is none.
+     * @param top The first row of the rectangle.
+     * @param left The first column of the rectangle.
+     * @param bottom The row after the last row of the rectangle.
+     * @param right The column after the last column of the rectangle.
+     */
+    private void drawTerrain(Terrain terrain, int top, int left, int bottom, int right)
+    {
+        if(terrain == null) {
+            return;
+        }
+        for(int row = top; row < bottom; row++) {
+            for(int col = left; col < right; col++) {
+                byte type = terrain.getType(row, col);
+                if(type == Terrain.WATER) {
+                    fieldView.drawMark(col, row, WATER_COLOR);
+                }
+                else if(type == Terrain.ROCK) {
+                    fieldView.drawMark(col, row, ROCK_COLOR);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The color to be used for the species with the given id.
+     */
+    private Color getColor(int speciesId)
+    {
+        if(speciesId == SpeciesRegistry.EMPTY) {
+            return EMPTY_COLOR;
+        }
+        Color col = colorsById[speciesId];
         if(col == null) {
-            // no color defined for this class
+            // no color defined for this species
             return UNKNOWN_COLOR;
         }
         else {
@@ -146,21 +196,42 @@ public class SimulatorView extends JFrame
 
         diseaseLabel.setText(DISEASE_PREFIX + disease.getDiseaseDeaths());
 
-        fieldView.preparePaint();
+        boolean newImage = fieldView.preparePaint();
+        CellVisitor marker = new CellVisitor() {
+            public void visit(int row, int col, int speciesId, Object occupant)
+            {
+                fieldView.drawMark(col, row, getColor(speciesId));
+            }
+        };
 
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    stats.incrementCount(animal.getClass());
-                    fieldView.drawMark(col, row, getColor(animal.getClass()));
-                }
-                else {
-                    fieldView.drawMark(col, row, EMPTY_COLOR);
+        // Only the occupied cells need to be drawn. The counts
+        // come from the totals the field keeps.
+        ActiveTiles tiles = field.getActiveTiles();
+        if(tiles == null || newImage || field != drawnField) {
+            fieldView.clearMarks(EMPTY_COLOR);
+            drawTerrain(field.getTerrain());
+            field.forEachOccupied(marker);
+        }
+        else {
+            // The rest of the image is as it was last time.
+            for(int tileRow = 0; tileRow < tiles.getTilesDown(); tileRow++) {
+                for(int tileCol = 0; tileCol < tiles.getTilesAcross(); tileCol++) {
+                    if(tiles.isActive(tileRow, tileCol, drawnGeneration)) {
+                        int top = tileRow * ActiveTiles.TILE_SIZE;
+                        int left = tileCol * ActiveTiles.TILE_SIZE;
+                        int bottom = Math.min(top + ActiveTiles.TILE_SIZE, field.getDepth());
+                        int right = Math.min(left + ActiveTiles.TILE_SIZE, field.getWidth());
+                        fieldView.clearMarks(EMPTY_COLOR, left, top, right, bottom);
+                        drawTerrain(field.getTerrain(), top, left, bottom, right);
+                        field.forEachOccupiedInTile(tileRow, tileCol, marker);
+                    }
                 }
             }
         }
-        stats.countFinished();
+        drawnField = field;
+        if(tiles != null) {
+            drawnGeneration = tiles.mark();
+        }
 
         String [] list = stats.getPopulationDetails(field).toArray(new String[stats.getPopulationDetails(field).size()]);
         populationList.setListData(list);
@@ -223,8 +294,9 @@ public class SimulatorView extends JFrame
         /**
          * Prepare for a new round of painting. Since the component
          * may be resized, compute the scaling factor again.
+         * @return true if there is a new, blank image to paint on.
          */
-        public void preparePaint()
+        public boolean preparePaint()
         {
             if(! size.equals(getSize())) {  // if the size has changed...
                 size = getSize();
@@ -239,9 +311,43 @@ public class SimulatorView extends JFrame
                 if(yScale < 1) {
                     yScale = GRID_VIEW_SCALING_FACTOR;
                 }
+                return true;
             }
+            return false;
         }
         
+        /**
+         * Paint every grid location in the given color.
+         * @param color The color.
+         */
+        public void clearMarks(Color color)
+        {
+            clearMarks(color, 0, 0, gridWidth, gridHeight);
+        }
+
+        /**
+         * Paint the grid locations in a rectangle in the given color. This is
+         * done with one rectangle and a line per row and column rather than a
+         * mark per location, leaving the same gaps between locations as drawMark.
+         * @param color The color.
+         * @param left The first column of the rectangle.
+         * @param top The first row of the rectangle.
+         * @param right The column after the last column of the rectangle.
+         * @param bottom The row after the last row of the rectangle.
+         */
+        public void clearMarks(Color color, int left, int top, int right, int bottom)
+        {
+            g.setColor(color);
+            g.fillRect(left * xScale, top * yScale, (right - left) * xScale, (bottom - top) * yScale);
+            g.setColor(getBackground());
+            for(int x = left + 1; x <= right; x++) {
+                g.drawLine(x * xScale - 1, top * yScale, x * xScale - 1, bottom * yScale - 1);
+            }
+            for(int y = top + 1; y <= bottom; y++) {
+                g.drawLine(left * xScale, y * yScale - 1, right * xScale - 1, y * yScale - 1);
+            }
+        }
+
         /**
          * Paint on grid location on this field in a given color.
          */
@@ -0,0 +1,467 @@
+import java.util.Arrays;
+
+/**
+ * A spatial index of the field, kept per species. The field is divided into
+ * square buckets, and for each species there is a map from bucket to the
+ * cells of that species inside it. Only buckets that hold something exist.
+ *
+ * Queries for a rectangle, a radius or the nearest members of a set of species
+ * only look at the buckets of those species that overlap the area. When the
+ * area covers more buckets than the species has, the species' buckets are
+ * walked instead, so the cost follows the number of members found rather than
+ * the size of the area searched.
+ *
+ * Distances are straight line distances and do not wrap around the edges
+ * of a toroidal field. Cells at the same distance are ordered by their
+ * packed keys, so the nearest cells found do not depend on the order in
+ * which the cells were added.
+ *
+ * The buckets of each species are spread over STRIPES maps by a hash of
+ * their position, and each map is locked on its own while it is changed or
+ * searched. So the index can be changed and searched from several threads
+ * at once, and threads working in different parts of the field seldom wait
+ * for each other, even when they change the same species. While the field is
+ * frozen, see setFrozen, nothing changes the index, so it is searched without
+ * taking the locks at all.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class SpatialIndex implements FieldIndex
+{
+    // The number of bits in a bucket coordinate; buckets are 16x16 cells.
+    private static final int BUCKET_BITS = 4;
+    // The number of cells a new bucket has room for.
+    private static final int INITIAL_BUCKET_SIZE = 8;
+    // The number of bits in a stripe number; there are 64 stripes per species.
+    private static final int STRIPE_BITS = 6;
+    // The number of maps the buckets of a species are spread over.
+    private static final int STRIPES = 1 << STRIPE_BITS;
+
+    // The buckets of each species and stripe, at speciesId * STRIPES + stripe,
+    // keyed by packed bucket row and column.
+    private final LongMap<Bucket>[] buckets;
+    // Whether the index is not being changed, so it can be searched without locks.
+    private volatile boolean frozen;
+    // The buffers of each thread for nearest searches.
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        protected Scratch initialValue()
+        {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Create an empty index.
+     */
+    @SuppressWarnings("unchecked")
+    public SpatialIndex()
+    {
+        buckets = (LongMap<Bucket>[]) new LongMap<?>[(SpeciesRegistry.MAX_SPECIES + 1) * STRIPES];
+    }
+
+    /**
+     * Move a cell between the buckets of its old and new species.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param oldSpeciesId The species id before the change.
+     * @param newSpeciesId The species id after the change.
+     */
+    public void cellChanged(int row, int col, int oldSpeciesId, int newSpeciesId)
+    {
+        long cell = Location.pack(row, col);
+        long bucketKey = Location.pack(row >> BUCKET_BITS, col >> BUCKET_BITS);
+        int stripe = stripeOf(bucketKey);
+        if(oldSpeciesId != SpeciesRegistry.EMPTY) {
+            LongMap<Bucket> map = buckets(oldSpeciesId * STRIPES + stripe);
+            synchronized(map) {
+                Bucket bucket = map.get(bucketKey);
+                if(bucket != null && bucket.remove(cell) && bucket.size == 0) {
+                    map.remove(bucketKey);
+                }
+            }
+        }
+        if(newSpeciesId != SpeciesRegistry.EMPTY) {
+            LongMap<Bucket> map = buckets(newSpeciesId * STRIPES + stripe);
+            synchronized(map) {
+                Bucket bucket = map.get(bucketKey);
+                if(bucket == null) {
+                    bucket = new Bucket();
+                    map.put(bucketKey, bucket);
+                }
+                bucket.add(cell);
+            }
+        }
+    }
+
+    /**
+     * Say whether the index is frozen. While it is frozen it is searched
+     * without locks, so it must not be changed until it is unfrozen, from
+     * the same thread or after waiting for the searching threads to finish.
+     * @param frozen true to freeze the index, false to allow changes again.
+     */
+    public void setFrozen(boolean frozen)
+    {
+        this.frozen = frozen;
+    }
+
+    /**
+     * Empty the index.
+     */
+    public void cleared()
+    {
+        for(LongMap<Bucket> map : buckets) {
+            if(map != null) {
+                synchronized(map) {
+                    map.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the cells holding one of a set of species inside a rectangle.
+     * @param top The first row of the rectangle.
+     * @param left The first column of the rectangle.
+     * @param bottom The last row of the rectangle.
+     * @param right The last column of the rectangle.
+     * @param speciesSet The species ids wanted, with bit n set for species id n.
+     * @param results Receives the packed keys of the cells found, in no particular order.
+     * @return The number of cells found, at most results.length.
+     */
+    public int findInRectangle(int top, int left, int bottom, int right, long speciesSet, long[] results)
+    {
+        return search(top, left, bottom, right, speciesSet, 0, 0, Long.MAX_VALUE, results, null);
+    }
+
+    /**
+     * Find the cells holding one of a set of species within a distance of a location.
+     * @param row The row of the centre.
+     * @param col The column of the centre.
+     * @param radius The largest distance.
+     * @param speciesSet The species ids wanted, with bit n set for species id n.
+     * @param results Receives the packed keys of the cells found, in no particular order.
+     * @return The number of cells found, at most results.length.
+     */
+    public int findInRadius(int row, int col, int radius, long speciesSet, long[] results)
+    {
+        return search(row - radius, col - radius, row + radius, col + radius, speciesSet,
+                      row, col, (long) radius * radius, results, null);
+    }
+
+    /**
+     * Find the closest cell holding one of a set of species.
+     * @param row The row of the centre.
+     * @param col The column of the centre.
+     * @param radius The largest distance to look.
+     * @param speciesSet The species ids wanted, with bit n set for species id n.
+     * @return The packed key of the closest cell, or Location.NONE if there is none in range.
+     */
+    public long findNearest(int row, int col, int radius, long speciesSet)
+    {
+        Scratch buffers = scratch.get();
+        int found = search(row - radius, col - radius, row + radius, col + radius, speciesSet,
+                           row, col, (long) radius * radius, buffers.nearest, buffers.distances(1));
+        return found > 0 ? buffers.nearest[0] : Location.NONE;
+    }
+
+    /**
+     * Find the k closest cells holding one of a set of species, where k is
+     * the length of the results array. The centre itself is never included.
+     * @param row The row of the centre.
+     * @param col The column of the centre.
+     * @param radius The largest distance to look.
+     * @param speciesSet The species ids wanted, with bit n set for species id n.
+     * @param results Receives the packed keys of the closest cells, closest first.
+     * @return The number of cells found, at most results.length.
+     */
+    public int findNearest(int row, int col, int radius, long speciesSet, long[] results)
+    {
+        return search(row - radius, col - radius, row + radius, col + radius, speciesSet,
+                      row, col, (long) radius * radius, results, scratch.get().distances(results.length));
+    }
+
+    /**
+     * Collect matching cells in a rectangle, optionally limited to a distance
+     * from a centre and optionally keeping only the closest ones.
+     * @param distances If not null, only the closest cells are kept, sorted,
+     *                  and this receives their squared distances. It must be
+     *                  at least as long as results.
+     * @return The number of cells written to results.
+     */
+    private int search(int top, int left, int bottom, int right, long speciesSet,
+                       int row, int col, long maxDistance, long[] results, long[] distances)
+    {
+        int found = 0;
+        while(speciesSet != 0) {
+            int id = Long.numberOfTrailingZeros(speciesSet);
+            speciesSet &= speciesSet - 1;
+            found = search(id * STRIPES, top, left, bottom, right, row, col, maxDistance, results, distances, found);
+        }
+        return found;
+    }
+
+    /**
+     * Collect matching cells from the buckets of one species.
+     * @param first The index of the species' first stripe in buckets.
+     * @param found The number of results so far.
+     * @return The new number of results.
+     */
+    private int search(int first, int top, int left, int bottom, int right,
+                       int row, int col, long maxDistance, long[] results, long[] distances, int found)
+    {
+        int bucketTop = top >> BUCKET_BITS;
+        int bucketLeft = left >> BUCKET_BITS;
+        int bucketBottom = bottom >> BUCKET_BITS;
+        int bucketRight = right >> BUCKET_BITS;
+        long area = (long) (bucketBottom - bucketTop + 1) * (bucketRight - bucketLeft + 1);
+        // The sizes are read without locking, as they only choose the way to search.
+        long size = 0;
+        for(int stripe = 0; stripe < STRIPES; stripe++) {
+            LongMap<Bucket> map = buckets[first + stripe];
+            if(map != null) {
+                size += map.size();
+            }
+        }
+        boolean locked = !frozen;
+        if(area > size) {
+            // The species has fewer buckets than the area covers.
+            for(int stripe = 0; stripe < STRIPES; stripe++) {
+                LongMap<Bucket> map = buckets[first + stripe];
+                if(map == null) {
+                    continue;
+                }
+                if(locked) {
+                    synchronized(map) {
+                        found = collectAll(map, bucketTop, bucketLeft, bucketBottom, bucketRight,
+                                           top, left, bottom, right, row, col, maxDistance, results, distances, found);
+                    }
+                }
+                else {
+                    found = collectAll(map, bucketTop, bucketLeft, bucketBottom, bucketRight,
+                                       top, left, bottom, right, row, col, maxDistance, results, distances, found);
+                }
+            }
+        }
+        else {
+            for(int bucketRow = bucketTop; bucketRow <= bucketBottom; bucketRow++) {
+                for(int bucketCol = bucketLeft; bucketCol <= bucketRight; bucketCol++) {
+                    long key = Location.pack(bucketRow, bucketCol);
+                    LongMap<Bucket> map = buckets[first + stripeOf(key)];
+                    if(map == null) {
+                        continue;
+                    }
+                    if(locked) {
+                        synchronized(map) {
+                            found = collect(map.get(key), top, left, bottom, right, row, col, maxDistance,
+                                            results, distances, found);
+                        }
+                    }
+                    else {
+                        found = collect(map.get(key), top, left, bottom, right, row, col, maxDistance,
+                                        results, distances, found);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Add the matching cells of every bucket in a map that overlaps a range
+     * of buckets to the results.
+     * @return The new number of results.
+     */
+    private int collectAll(LongMap<Bucket> map, int bucketTop, int bucketLeft, int bucketBottom, int bucketRight,
+                           int top, int left, int bottom, int right,
+                           int row, int col, long maxDistance, long[] results, long[] distances, int found)
+    {
+        for(int slot = 0; slot < map.capacity(); slot++) {
+            Bucket bucket = map.valueAt(slot);
+            if(bucket != null) {
+                long key = map.keyAt(slot);
+                int bucketRow = Location.row(key);
+                int bucketCol = Location.col(key);
+                if(bucketRow >= bucketTop && bucketRow <= bucketBottom
+                   && bucketCol >= bucketLeft && bucketCol <= bucketRight) {
+                    found = collect(bucket, top, left, bottom, right, row, col, maxDistance,
+                                    results, distances, found);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Add the matching cells of one bucket to the results.
+     * @param bucket The bucket, or null if there is none.
+     * @return The new number of results.
+     */
+    private int collect(Bucket bucket, int top, int left, int bottom, int right,
+                        int row, int col, long maxDistance, long[] results, long[] distances, int found)
+    {
+        if(bucket == null) {
+            return found;
+        }
+        for(int i = 0; i < bucket.size; i++) {
+            long cell = bucket.cells[i];
+            int cellRow = Location.row(cell);
+            int cellCol = Location.col(cell);
+            if(cellRow < top || cellRow > bottom || cellCol < left || cellCol > right) {
+                continue;
+            }
+            long dr = cellRow - row;
+            long dc = cellCol - col;
+            long distance = dr * dr + dc * dc;
+            if(maxDistance != Long.MAX_VALUE && distance > maxDistance) {
+                continue;
+            }
+            if(distances == null) {
+                if(found < results.length) {
+                    results[found++] = cell;
+                }
+            }
+            else if(distance > 0) {
+                found = insertByDistance(cell, distance, results, distances, found);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Insert a cell into a list kept sorted by distance, and by packed key
+     * among cells at the same distance, dropping the last cell if the list
+     * is full.
+     * @return The new length of the list.
+     */
+    private static int insertByDistance(long cell, long distance, long[] results, long[] distances, int found)
+    {
+        if(found == results.length) {
+            if(found == 0 || !isBefore(cell, distance, results[found - 1], distances[found - 1])) {
+                return found;
+            }
+            found--;
+        }
+        int i = found;
+        while(i > 0 && isBefore(cell, distance, results[i - 1], distances[i - 1])) {
+            results[i] = results[i - 1];
+            distances[i] = distances[i - 1];
+            i--;
+        }
+        results[i] = cell;
+        distances[i] = distance;
+        return found + 1;
+    }
+
+    /**
+     * @return true if a cell at a distance comes before another cell at a
+     *         distance: it is closer, or as close with a smaller packed key.
+     */
+    private static boolean isBefore(long cell, long distance, long otherCell, long otherDistance)
+    {
+        return distance < otherDistance || (distance == otherDistance && cell < otherCell);
+    }
+
+    /**
+     * Find the stripe of a bucket. Buckets next to each other are spread
+     * over different stripes.
+     * @param bucketKey The packed bucket row and column.
+     * @return The stripe, from 0 to STRIPES - 1.
+     */
+    private static int stripeOf(long bucketKey)
+    {
+        return (int) ((bucketKey * 0x9E3779B97F4A7C15L) >>> (64 - STRIPE_BITS));
+    }
+
+    /**
+     * Return the buckets of a species and stripe, creating them if needed.
+     * @param index The index of the species and stripe, speciesId * STRIPES + stripe.
+     * @return The buckets.
+     */
+    private LongMap<Bucket> buckets(int index)
+    {
+        LongMap<Bucket> map = buckets[index];
+        if(map == null) {
+            map = createBuckets(index);
+        }
+        return map;
+    }
+
+    /**
+     * Create the buckets of a species and stripe, unless another thread has
+     * just done so.
+     * @param index The index of the species and stripe, speciesId * STRIPES + stripe.
+     * @return The buckets.
+     */
+    private synchronized LongMap<Bucket> createBuckets(int index)
+    {
+        LongMap<Bucket> map = buckets[index];
+        if(map == null) {
+            map = new LongMap<>();
+            buckets[index] = map;
+        }
+        return map;
+    }
+
+    /**
+     * The cells of one species within one bucket.
+     */
+    private static class Bucket
+    {
+        // The packed keys of the cells.
+        long[] cells = new long[INITIAL_BUCKET_SIZE];
+        // The number of cells.
+        int size;
+
+        /**
+         * Add a cell.
+         */
+        void add(long cell)
+        {
+            if(size == cells.length) {
+                cells = Arrays.copyOf(cells, size * 2);
+            }
+            cells[size++] = cell;
+        }
+
+        /**
+         * Remove a cell, moving the last cell into its place.
+         * @return true if the cell was found.
+         */
+        boolean remove(long cell)
+        {
+            for(int i = 0; i < size; i++) {
+                if(cells[i] == cell) {
+                    size--;
+                    cells[i] = cells[size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The buffers one thread uses for nearest searches, kept so that a
+     * search does not create any arrays.
+     */
+    private static class Scratch
+    {
+        // The nearest cell, for findNearest of a single cell.
+        final long[] nearest = new long[1];
+        // The squared distances of the cells found.
+        private long[] distances = new long[1];
+
+        /**
+         * @param length The number of distances wanted.
+         * @return The distance buffer, with room for at least that many.
+         */
+        long[] distances(int length)
+        {
+            if(distances.length < length) {
+                distances = new long[length];
+            }
+            return distances;
+        }
+    }
+}
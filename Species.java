@@ -15,10 +15,31 @@ public abstract class Species {
     private Location location;
 
 
-    // Whether the species is alive or not.
-    private boolean alive;
-    //The species' age
-    protected int age;
+    //Returned by rest when the species must act in the next step.
+    public static final long ACTIVE = -1;
+
+    //The species' state as a word of EntityStore flags, such as ALIVE,
+    //kept here while the species is not in a store.
+    private int state;
+    //The step the species was born in, counting back from its age, so its
+    //age is worked out when needed rather than counted up every step.
+    private long birthStep;
+    //The scheduler the species is resting in, or null if it is active.
+    private WakeScheduler scheduler;
+    //The step the species is due to act again, or ACTIVE.
+    private long wakeStep = ACTIVE;
+    // The id of this species' class, as stored in the field.
+    private final int speciesId = SpeciesRegistry.getId(getClass());
+    //The parameters of this species' kind.
+    private final SpeciesParameters parameters;
+    //The store holding the species' state while it is in a SpeciesPool,
+    //or null while the state is kept in the fields here.
+    private EntityStore store;
+    //The species' handle in the store, which leads to its row.
+    private int handle;
+    //The id of the species' random number streams, made from the cell and
+    //step it was created in, so it stays the same wherever the species goes.
+    private final long streamId;
 
     /**
      * Create a new species (animal/plant)
@@ -27,28 +48,106 @@ public abstract class Species {
      */
     public Species(Field field, Location location) {
         this.field = field;
+        parameters = SpeciesParameters.of(this);
         setLocation(location);
-        alive = true;
-        age = 0;
+        streamId = location.getKey() ^ Time.getStep() * 0x9E3779B97F4A7C15L;
+        state = EntityStore.ALIVE;
+        setAge(0);
+    }
+
+    /**
+     * Return the species' age, which grows by 1 every step.
+     * @return The species' age.
+     */
+    protected int getAge()
+    {
+        long birth = store != null ? store.getBirthStep(getRow()) : birthStep;
+        return (int) (Time.getStep() - birth);
     }
 
     /**
-     * Increases the species age by 1.
+     * Set the species' age as of the current step.
+     * @param age The age.
      */
-    protected void incrementAge()
+    protected void setAge(int age)
     {
-        age++;
-        if(age>getMAX_AGE()) {
+        if(store != null) {
+            store.setBirthStep(getRow(), Time.getStep() - age);
+        }
+        else {
+            birthStep = Time.getStep() - age;
+        }
+    }
+
+    /**
+     * The species dies if it has passed its max age.
+     */
+    protected void checkAge()
+    {
+        if(getAge()>parameters.getMaxAge()) {
             setDead();
         }
     }
+
+    /**
+     * Work out whether the species can rest through the steps after the
+     * current one, because it would do nothing in them, and if so until when.
+     * A resting species must still be woken early if something that matters
+     * to it changes, see wakeEarly.
+     * @return The step in which the species must act again, or ACTIVE if it
+     *         must act in the next step.
+     */
+    protected long rest()
+    {
+        return ACTIVE;
+    }
+
+    /**
+     * Wake the species up to act in the given step.
+     * @param step The step the species acts in next.
+     */
+    protected void wakeUp(long step)
+    {
+        scheduler = null;
+        wakeStep = ACTIVE;
+    }
+
+    /**
+     * Wake a resting species up to act in the next step, unless it is
+     * due to act then anyway.
+     */
+    protected void wakeEarly()
+    {
+        if(scheduler != null && wakeStep > Time.getStep() + 1) {
+            scheduler.schedule(this, Time.getStep() + 1);
+        }
+    }
+
+    /**
+     * Note that the species is resting in a scheduler until the given step.
+     * @param scheduler The scheduler.
+     * @param step The step the species is due to act again.
+     */
+    void setWakeStep(WakeScheduler scheduler, long step)
+    {
+        this.scheduler = scheduler;
+        wakeStep = step;
+    }
+
+    /**
+     * @return The step the species is due to act again, or ACTIVE if it is active.
+     */
+    long getWakeStep()
+    {
+        return wakeStep;
+    }
     /**
      * Check whether the animal/plant is alive or not.
      * @return true if the animal/plant is still alive.
      */
     protected boolean isAlive()
     {
-        return alive;
+        return hasFlag(EntityStore.ALIVE);
     }
 
     /**
@@ -57,7 +156,7 @@ public abstract class Species {
      */
     protected void setDead()
     {
-        alive = false;
+        setFlag(EntityStore.ALIVE, false);
         if(location != null) {
             field.clear(location);
             location = null;
@@ -65,17 +164,142 @@ public abstract class Species {
         }
     }
 
+    /**
+     * Move the species' state into a row of a store, where it is kept
+     * until the species is detached again.
+     * @param store The store.
+     * @param row The row.
+     */
+    void attach(EntityStore store, int row)
+    {
+        if(this.store != null) {
+            detach();
+        }
+        saveState(store, row);
+        this.store = store;
+        handle = store.addHandle(row);
+    }
+
+    /**
+     * Move the species' state out of its store back into its fields.
+     */
+    void detach()
+    {
+        if(store != null) {
+            EntityStore oldStore = store;
+            store = null;
+            loadState(oldStore, oldStore.getRow(handle));
+            oldStore.removeHandle(handle);
+        }
+    }
+
+    /**
+     * @param store A store.
+     * @param row A row.
+     * @return true if the species' state is kept in that row of that store.
+     */
+    boolean isStoredAt(EntityStore store, int row)
+    {
+        return this.store == store && store.getRow(handle) == row;
+    }
+
+    /**
+     * Write the state kept in the fields to a row of a store.
+     * Subclasses with state of their own add it to the row.
+     * @param store The store.
+     * @param row The row.
+     */
+    protected void saveState(EntityStore store, int row)
+    {
+        store.setFlags(row, state);
+        store.setSpeciesId(row, speciesId);
+        store.setBirthStep(row, birthStep);
+    }
+
+    /**
+     * Read the state back from a row of a store into the fields.
+     * @param store The store.
+     * @param row The row.
+     */
+    protected void loadState(EntityStore store, int row)
+    {
+        state = store.getFlags(row);
+        birthStep = store.getBirthStep(row);
+    }
+
+    /**
+     * @return The store holding the species' state, or null if it is
+     *         kept in the fields.
+     */
+    protected EntityStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * @return The species' row in its store.
+     */
+    protected int getRow()
+    {
+        return store.getRow(handle);
+    }
+
+    /**
+     * @return The species' state, as a word of EntityStore flags.
+     */
+    protected int getFlags()
+    {
+        return store != null ? store.getFlags(getRow()) : state;
+    }
+
+    /**
+     * @param flag A flag of the species' state, e.g. EntityStore.ALIVE.
+     * @return true if the flag is set.
+     */
+    protected boolean hasFlag(int flag)
+    {
+        return (getFlags() & flag) != 0;
+    }
+
+    /**
+     * @param flag A flag of the species' state, e.g. EntityStore.ALIVE.
+     * @param set true to set the flag, false to clear it.
+     */
+    protected void setFlag(int flag, boolean set)
+    {
+        if(store != null) {
+            store.setFlag(getRow(), flag, set);
+        }
+        else if(set) {
+            state |= flag;
+        }
+        else {
+            state &= ~flag;
+        }
+    }
+
     /**
      * Place the species at the new location in the given field.
+     * The field's shared location object for the cell is kept,
+     * rather than the one passed in.
      * @param newLocation The species' new location.
      */
     protected void setLocation(Location newLocation)
+    {
+        setLocation(newLocation.getKey());
+    }
+
+    /**
+     * Place the species in the cell with the given packed key.
+     * @param cell The packed key of the new cell, see Location.pack.
+     */
+    protected void setLocation(long cell)
     {
         if(location != null) {
             field.clear(location);
         }
-        location = newLocation;
-        field.place(this, newLocation);
+        field.place(this, cell);
+        location = field.getLocation(cell);
     }
     /**
      * Return the species' location.
@@ -86,6 +310,37 @@ public abstract class Species {
         return location;
     }
 
+    /**
+     * Return the random numbers for one purpose of this species in the
+     * current step, drawn from the species' own stream.
+     * The stream must be finished with before another is asked for.
+     * @param purpose What the numbers are for, e.g. Randomizer.BREED.
+     * @return The random number stream.
+     */
+    protected Random getRandom(int purpose)
+    {
+        return Randomizer.getStream(streamId, purpose);
+    }
+
+    /**
+     * Return the id of this species' class.
+     * @return The species id.
+     */
+    protected int getSpeciesId()
+    {
+        return speciesId;
+    }
+
+    /**
+     * Return the parameters of this species' kind, which the code that runs
+     * every step reads in place of the getters below.
+     * @return The species' parameters.
+     */
+    protected SpeciesParameters getParameters()
+    {
+        return parameters;
+    }
+
     /**
      * Return the species' field.
      * @return The species' field.
@@ -104,6 +359,21 @@ public abstract class Species {
      */
     abstract public void act(List<Species> newSpecies);
 
+    /**
+     * Decide what this species will do this step, without changing the field,
+     * and add it to the intents for the IntentStepEngine to carry out.
+     * Only the species' own state, such as its age, may change here.
+     * @param intents The buffer to add the intents to.
+     */
+    abstract public void plan(IntentBuffer intents);
+
+    /**
+     * Create a newborn of the same kind as this species.
+     * @param location The free location to create it in.
+     * @return The newborn species.
+     */
+    protected abstract Species createOffspring(Location location);
+
     /**
      *  @return the species' max age.
      */
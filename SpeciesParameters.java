@@ -0,0 +1,508 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The parameters of one kind of species, such as its maximum age and how
+ * likely it is to breed, kept in one record per species id. The code that
+ * runs every step reads them from here, rather than asking each species
+ * through the getters of its class.
+ *
+ * A record is made the first time a species of its kind is created, from
+ * the constants of the species' class. Any of them can be overridden in a
+ * parameter file, a properties file with one line per parameter, named after
+ * the class and the constant, for example:
+ *
+ *     Lion.MAX_AGE = 120
+ *     Grass.SPREADING_PROBABILITY = 0.05
+ *     Cheetah.EDIBLE_SPECIES = Gazelle, Zebra
+ *
+ * The file DEFAULT_FILE is read if it exists; another file can be read with
+ * load. A file is checked in full when it is read, so a mistake in it is
+ * reported then, naming the line. The parameters of a record never change
+ * once it has been made.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public final class SpeciesParameters
+{
+    // The parameter file read if it exists and no other file has been loaded.
+    public static final String DEFAULT_FILE = "species.properties";
+
+    // The names of the parameters, as used in a parameter file.
+    private static final List<String> NAMES = Arrays.asList(
+        "MAX_AGE", "FOOD_VALUE", "EDIBLE", "BREEDING_AGE", "BREEDING_PROBABILITY",
+        "MAX_LITTER_SIZE", "INITIAL_FOOD_LEVEL", "MAX_FOOD_LEVEL", "DIURNAL",
+        "HUNTING_VISIBILITY_REQUIRED", "PERCEPTION_RADIUS", "EDIBLE_SPECIES",
+        "EDIBLE_AGE", "SPREADING_PROBABILITY");
+    // The parameters that only animals, predators and plants have.
+    private static final List<String> ANIMAL_NAMES = Arrays.asList(
+        "BREEDING_AGE", "BREEDING_PROBABILITY", "MAX_LITTER_SIZE", "INITIAL_FOOD_LEVEL",
+        "MAX_FOOD_LEVEL", "DIURNAL", "HUNTING_VISIBILITY_REQUIRED", "EDIBLE_SPECIES");
+    private static final List<String> PREDATOR_NAMES = Arrays.asList("PERCEPTION_RADIUS");
+    private static final List<String> PLANT_NAMES = Arrays.asList("EDIBLE_AGE", "SPREADING_PROBABILITY");
+    // The parameters that are probabilities, true or false, and lists of
+    // species; the rest are whole numbers.
+    private static final List<String> PROBABILITY_NAMES = Arrays.asList(
+        "BREEDING_PROBABILITY", "SPREADING_PROBABILITY");
+    private static final List<String> BOOLEAN_NAMES = Arrays.asList(
+        "EDIBLE", "DIURNAL", "HUNTING_VISIBILITY_REQUIRED");
+    private static final List<String> LIST_NAMES = Arrays.asList("EDIBLE_SPECIES");
+
+    // The record of each species id, or null if none has been made yet.
+    private static final SpeciesParameters[] records = new SpeciesParameters[SpeciesRegistry.MAX_SPECIES + 1];
+    // The parameters read from a file, by "Class.NAME", or null if no file has been read.
+    private static Map<String, String> overrides;
+
+    // Whether the species is a plant, and whether it is a predator.
+    private final boolean plant, predator;
+    // The parameters shared by all species.
+    private final int maxAge;
+    private final int foodValue;
+    private final boolean edible;
+    // The parameters of animals.
+    private final int breedingAge;
+    private final double breedingProbability;
+    private final int maxLitterSize;
+    private final int initialFoodLevel;
+    private final int maxFoodLevel;
+    private final boolean diurnal;
+    private final boolean huntingVisibilityRequired;
+    // The names of the classes the animal eats, compiled into the FoodWeb.
+    private final List<String> edibleSpecies;
+    // The parameters of predators.
+    private final int perceptionRadius;
+    // The parameters of plants.
+    private final int edibleAge;
+    private final double spreadingProbability;
+
+    /**
+     * Make the record for a kind of species, from the constants of its class
+     * and any parameters read from a file.
+     * @param s A species of the kind.
+     * @param values The parameters read from a file, by name.
+     */
+    private SpeciesParameters(Species s, Map<String, String> values)
+    {
+        plant = s instanceof Plant;
+        predator = s instanceof Predator;
+        maxAge = intValue(values, "MAX_AGE", s.getMAX_AGE());
+        foodValue = intValue(values, "FOOD_VALUE", s.getFOOD_VALUE());
+        edible = booleanValue(values, "EDIBLE", s.isEDIBLE());
+        if(s instanceof Animal) {
+            Animal animal = (Animal) s;
+            breedingAge = intValue(values, "BREEDING_AGE", animal.getBREEDING_AGE());
+            breedingProbability = doubleValue(values, "BREEDING_PROBABILITY", animal.getBREEDING_PROBABILITY());
+            maxLitterSize = intValue(values, "MAX_LITTER_SIZE", animal.getMAX_LITTER_SIZE());
+            initialFoodLevel = intValue(values, "INITIAL_FOOD_LEVEL", animal.getINITIAL_FOOD_LEVEL());
+            maxFoodLevel = intValue(values, "MAX_FOOD_LEVEL", animal.getMAX_FOOD_LEVEL());
+            diurnal = booleanValue(values, "DIURNAL", animal.isDIURNAL());
+            huntingVisibilityRequired = booleanValue(values, "HUNTING_VISIBILITY_REQUIRED",
+                                                     animal.getHUNTING_VISIBILITY_REQUIRED());
+            edibleSpecies = listValue(values, "EDIBLE_SPECIES", animal.getEDIBLE_SPECIES());
+        }
+        else {
+            breedingAge = 0;
+            breedingProbability = 0;
+            maxLitterSize = 0;
+            initialFoodLevel = 0;
+            maxFoodLevel = 0;
+            diurnal = false;
+            huntingVisibilityRequired = false;
+            edibleSpecies = Collections.emptyList();
+        }
+        perceptionRadius = predator ? intValue(values, "PERCEPTION_RADIUS", ((Predator) s).getPERCEPTION_RADIUS()) : 0;
+        if(plant) {
+            Plant p = (Plant) s;
+            edibleAge = intValue(values, "EDIBLE_AGE", p.getEDIBLE_AGE());
+            spreadingProbability = doubleValue(values, "SPREADING_PROBABILITY", p.getSPREADING_PROBABILITY());
+        }
+        else {
+            edibleAge = 0;
+            spreadingProbability = 0;
+        }
+    }
+
+    /**
+     * Return the record for the kind of a species, making it if this is the
+     * first species of its kind.
+     * @param s The species.
+     * @return The record of its species id.
+     */
+    public static SpeciesParameters of(Species s)
+    {
+        SpeciesParameters record = records[s.getSpeciesId()];
+        if(record == null) {
+            record = make(s);
+        }
+        return record;
+    }
+
+    /**
+     * Return the record for a species id.
+     * @param speciesId The species id of a kind of species that has been created.
+     * @return The record, or null if no species of the kind has been created.
+     */
+    public static SpeciesParameters get(int speciesId)
+    {
+        return records[speciesId];
+    }
+
+    /**
+     * Return the farthest any species made so far can see, which is as far
+     * from itself as a species looks at the field.
+     * @return The largest perception radius of the records made so far, or
+     *         0 if none of them is a predator.
+     */
+    public static synchronized int getLargestPerceptionRadius()
+    {
+        int largest = 0;
+        for(SpeciesParameters record : records) {
+            if(record != null) {
+                largest = Math.max(largest, record.perceptionRadius);
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Read the parameters from a file, in place of any read before. Records
+     * already made are dropped, but species already created keep theirs, so
+     * this should be done before the first species is created.
+     *
+     * Every line is checked as it is read: it must name a class of species
+     * that exists and a parameter that species has, with a value of the
+     * right kind. Whole numbers must not be negative, and probabilities
+     * must be from 0 to 1.
+     * @param filename The name of the parameter file.
+     * @throws IOException If the file cannot be read, or a line of it is wrong.
+     */
+    public static synchronized void load(String filename) throws IOException
+    {
+        Properties properties = new Properties();
+        try(Reader reader = new FileReader(filename)) {
+            properties.load(reader);
+        }
+        Map<String, String> values = new HashMap<>();
+        for(String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            check(filename, key, value);
+            values.put(key, value);
+        }
+        overrides = values;
+        Arrays.fill(records, null);
+        FoodWeb.clear();
+    }
+
+    /**
+     * Check a line of a parameter file.
+     * @param filename The name of the parameter file.
+     * @param key The key of the line, "Class.NAME".
+     * @param value The value of the line.
+     * @throws IOException If the line is wrong, naming the key.
+     */
+    private static void check(String filename, String key, String value) throws IOException
+    {
+        int dot = key.lastIndexOf('.');
+        String name = key.substring(dot + 1);
+        if(dot < 0 || !NAMES.contains(name)) {
+            throw new IOException(filename + ": unknown parameter '" + key + "'");
+        }
+        Class<? extends Species> speciesClass = speciesClass(key.substring(0, dot));
+        if(speciesClass == null) {
+            throw new IOException(filename + ": unknown species in '" + key + "'");
+        }
+        if(ANIMAL_NAMES.contains(name) && !Animal.class.isAssignableFrom(speciesClass)
+           || PREDATOR_NAMES.contains(name) && !Predator.class.isAssignableFrom(speciesClass)
+           || PLANT_NAMES.contains(name) && !Plant.class.isAssignableFrom(speciesClass)) {
+            throw new IOException(filename + ": " + speciesClass.getName() + " has no parameter '" + key + "'");
+        }
+        if(BOOLEAN_NAMES.contains(name)) {
+            if(!value.equals("true") && !value.equals("false")) {
+                throw new IOException(filename + ": '" + key + "' must be true or false, not '" + value + "'");
+            }
+        }
+        else if(LIST_NAMES.contains(name)) {
+            for(String item : value.split(",")) {
+                if(!item.trim().isEmpty() && speciesClass(item.trim()) == null) {
+                    throw new IOException(filename + ": unknown species '" + item.trim() + "' in '" + key + "'");
+                }
+            }
+        }
+        else if(PROBABILITY_NAMES.contains(name)) {
+            double probability;
+            try {
+                probability = Double.parseDouble(value);
+            }
+            catch(NumberFormatException e) {
+                probability = Double.NaN;
+            }
+            if(!(probability >= 0 && probability <= 1)) {
+                throw new IOException(filename + ": '" + key + "' must be a probability from 0 to 1, not '"
+                                      + value + "'");
+            }
+        }
+        else {
+            int number;
+            try {
+                number = Integer.parseInt(value);
+            }
+            catch(NumberFormatException e) {
+                number = -1;
+            }
+            if(number < 0) {
+                throw new IOException(filename + ": '" + key + "' must be a whole number of at least 0, not '"
+                                      + value + "'");
+            }
+        }
+    }
+
+    /**
+     * @param name The name of a class.
+     * @return The class of species of that name, or null if there is no
+     *         class of that name that can be created as a species.
+     */
+    private static Class<? extends Species> speciesClass(String name)
+    {
+        try {
+            Class<?> c = Class.forName(name);
+            if(Species.class.isAssignableFrom(c) && !Modifier.isAbstract(c.getModifiers())) {
+                return c.asSubclass(Species.class);
+            }
+        }
+        catch(ClassNotFoundException e) {
+            // Nothing of that name exists.
+        }
+        return null;
+    }
+
+    /**
+     * Make the record for the kind of a species, once only, reading the
+     * default parameter file first if no file has been read yet.
+     * @param s The species.
+     * @return The record of its species id.
+     */
+    private static synchronized SpeciesParameters make(Species s)
+    {
+        int id = s.getSpeciesId();
+        if(records[id] == null) {
+            if(overrides == null) {
+                try {
+                    if(new File(DEFAULT_FILE).isFile()) {
+                        load(DEFAULT_FILE);
+                    }
+                    else {
+                        overrides = new HashMap<>();
+                    }
+                }
+                catch(IOException e) {
+                    throw new IllegalStateException("Cannot read " + DEFAULT_FILE + ": " + e.getMessage(), e);
+                }
+            }
+            String prefix = s.getClass().getName() + ".";
+            Map<String, String> values = new HashMap<>();
+            for(Map.Entry<String, String> entry : overrides.entrySet()) {
+                if(entry.getKey().startsWith(prefix)) {
+                    values.put(entry.getKey().substring(prefix.length()), entry.getValue());
+                }
+            }
+            records[id] = new SpeciesParameters(s, values);
+        }
+        return records[id];
+    }
+
+    /**
+     * @return true if the species is a plant.
+     */
+    public boolean isPlant()
+    {
+        return plant;
+    }
+
+    /**
+     * @return true if the species is a predator.
+     */
+    public boolean isPredator()
+    {
+        return predator;
+    }
+
+    /**
+     * @return The age to which the species can live.
+     */
+    public int getMaxAge()
+    {
+        return maxAge;
+    }
+
+    /**
+     * @return The food value of the species when it is eaten.
+     */
+    public int getFoodValue()
+    {
+        return foodValue;
+    }
+
+    /**
+     * @return true if the species can be eaten.
+     */
+    public boolean isEdible()
+    {
+        return edible;
+    }
+
+    /**
+     * @return The age at which an animal can start to breed.
+     */
+    public int getBreedingAge()
+    {
+        return breedingAge;
+    }
+
+    /**
+     * @return The likelihood of an animal breeding.
+     */
+    public double getBreedingProbability()
+    {
+        return breedingProbability;
+    }
+
+    /**
+     * @return The maximum number of births of an animal at once.
+     */
+    public int getMaxLitterSize()
+    {
+        return maxLitterSize;
+    }
+
+    /**
+     * @return The food level of a newborn animal.
+     */
+    public int getInitialFoodLevel()
+    {
+        return initialFoodLevel;
+    }
+
+    /**
+     * @return The food level at which an animal can no longer eat.
+     */
+    public int getMaxFoodLevel()
+    {
+        return maxFoodLevel;
+    }
+
+    /**
+     * @return true if the animal is awake by day.
+     */
+    public boolean isDiurnal()
+    {
+        return diurnal;
+    }
+
+    /**
+     * @return true if the animal needs to see clearly to find food.
+     */
+    public boolean isHuntingVisibilityRequired()
+    {
+        return huntingVisibilityRequired;
+    }
+
+    /**
+     * @return The names of the classes the animal can eat.
+     */
+    public List<String> getEdibleSpecies()
+    {
+        return edibleSpecies;
+    }
+
+    /**
+     * @return How far away a predator can see prey.
+     */
+    public int getPerceptionRadius()
+    {
+        return perceptionRadius;
+    }
+
+    /**
+     * @return The age at which a plant can be eaten.
+     */
+    public int getEdibleAge()
+    {
+        return edibleAge;
+    }
+
+    /**
+     * @return The likelihood of a plant spreading in a step.
+     */
+    public double getSpreadingProbability()
+    {
+        return spreadingProbability;
+    }
+
+    /**
+     * @param values The parameters read from a file, by name.
+     * @param name The name of a parameter.
+     * @param value The value from the class.
+     * @return The value read from the file, or else the value from the class.
+     */
+    private static int intValue(Map<String, String> values, String name, int value)
+    {
+        String text = values.get(name);
+        return text != null ? Integer.parseInt(text) : value;
+    }
+
+    /**
+     * @param values The parameters read from a file, by name.
+     * @param name The name of a parameter.
+     * @param value The value from the class.
+     * @return The value read from the file, or else the value from the class.
+     */
+    private static double doubleValue(Map<String, String> values, String name, double value)
+    {
+        String text = values.get(name);
+        return text != null ? Double.parseDouble(text) : value;
+    }
+
+    /**
+     * @param values The parameters read from a file, by name.
+     * @param name The name of a parameter.
+     * @param value The value from the class.
+     * @return The value read from the file, or else the value from the class.
+     */
+    private static boolean booleanValue(Map<String, String> values, String name, boolean value)
+    {
+        String text = values.get(name);
+        return text != null ? Boolean.parseBoolean(text) : value;
+    }
+
+    /**
+     * @param values The parameters read from a file, by name.
+     * @param name The name of a parameter, whose value is a list separated by commas.
+     * @param value The value from the class.
+     * @return The value read from the file, or else the value from the class.
+     */
+    private static List<String> listValue(Map<String, String> values, String name, List<String> value)
+    {
+        String text = values.get(name);
+        if(text == null) {
+            return Collections.unmodifiableList(new ArrayList<>(value));
+        }
+        List<String> list = new ArrayList<>();
+        for(String item : text.split(",")) {
+            if(!item.trim().isEmpty()) {
+                list.add(item.trim());
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+}
@@ -0,0 +1,319 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The species taking part in a simulation, kept densely in one array.
+ *
+ * A species that dies stays in its slot as a tombstone until compact is
+ * called, once per step, which drops every tombstone in a single pass. This
+ * keeps the cost of a step linear in the number of species even when most of
+ * them die at once, where removing them one by one from an ArrayList would
+ * cost time for each one. The order of the living species is kept.
+ *
+ * Newborns are gathered in a buffer that is kept from step to step, and are
+ * added to the end of the pool with addNewborns.
+ *
+ * The hot state of the species in the pool is kept in an EntityStore, in
+ * the row with the same index as the species' slot. The rows are moved
+ * along with the species, and a species that leaves the pool takes its
+ * state back.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class SpeciesPool extends AbstractList<Species> implements RandomAccess
+{
+    // The number of species the pool has room for at first.
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // The species, in slots 0 to size - 1. Dead species are tombstones.
+    private Species[] entities;
+    // The number of slots in use.
+    private int size;
+    // The newborns of the current step.
+    private final List<Species> newborns;
+    // The state of the species, one row per slot.
+    private final EntityStore store;
+
+    /**
+     * Create an empty pool.
+     */
+    public SpeciesPool()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty pool with room for the given number of species.
+     * @param capacity The number of species to make room for.
+     */
+    public SpeciesPool(int capacity)
+    {
+        entities = new Species[Math.max(capacity, 1)];
+        newborns = new ArrayList<>();
+        store = new EntityStore(entities.length);
+    }
+
+    /**
+     * @param index The slot.
+     * @return The species in the slot, which may be dead.
+     */
+    public Species get(int index)
+    {
+        checkIndex(index);
+        return entities[index];
+    }
+
+    /**
+     * Put a species in a slot.
+     * @param index The slot.
+     * @param s The species.
+     * @return The species that was in the slot.
+     */
+    public Species set(int index, Species s)
+    {
+        checkIndex(index);
+        Species old = entities[index];
+        if(old != s) {
+            if(old.isStoredAt(store, index)) {
+                old.detach();
+            }
+            entities[index] = s;
+            store(s, index);
+        }
+        return old;
+    }
+
+    /**
+     * Add a species to the end of the pool.
+     * @param s The species.
+     * @return true.
+     */
+    public boolean add(Species s)
+    {
+        ensureCapacity(size + 1);
+        entities[size] = s;
+        store(s, size);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Insert a species into a slot, moving the later ones along.
+     * @param index The slot.
+     * @param s The species.
+     */
+    public void add(int index, Species s)
+    {
+        if(index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        ensureCapacity(size + 1);
+        store.moveRange(index, index + 1, size - index);
+        System.arraycopy(entities, index, entities, index + 1, size - index);
+        entities[index] = s;
+        store(s, index);
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Remove the species in a slot, moving the later ones back.
+     * Prefer leaving dead species as tombstones for compact.
+     * @param index The slot.
+     * @return The species removed.
+     */
+    public Species remove(int index)
+    {
+        checkIndex(index);
+        Species old = entities[index];
+        if(old.isStoredAt(store, index)) {
+            old.detach();
+        }
+        store.moveRange(index + 1, index, size - index - 1);
+        System.arraycopy(entities, index + 1, entities, index, size - index - 1);
+        entities[--size] = null;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * @return The number of slots in use, including tombstones.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Remove every species and every newborn.
+     */
+    public void clear()
+    {
+        detachRange(0, size);
+        Arrays.fill(entities, 0, size, null);
+        size = 0;
+        newborns.clear();
+        modCount++;
+    }
+
+    /**
+     * Drop every dead species, keeping the order of the living ones.
+     * @return The number of species dropped.
+     */
+    public int compact()
+    {
+        int kept = 0;
+        for(int i = 0; i < size; i++) {
+            // A row of its own tells whether the species is alive, without
+            // looking at the species.
+            boolean stored = store.isOwned(i);
+            if(stored ? store.hasFlag(i, EntityStore.ALIVE) : entities[i].isAlive()) {
+                if(kept != i) {
+                    entities[kept] = entities[i];
+                    if(stored) {
+                        store.move(i, kept);
+                    }
+                    else {
+                        store(entities[kept], kept);
+                    }
+                }
+                kept++;
+            }
+            else if(stored) {
+                entities[i].detach();
+            }
+        }
+        int dropped = size - kept;
+        Arrays.fill(entities, kept, size, null);
+        size = kept;
+        if(dropped > 0) {
+            modCount++;
+        }
+        return dropped;
+    }
+
+    /**
+     * Return the buffer for this step's newborns. It is kept from step to
+     * step and emptied by addNewborns.
+     * @return The newborn buffer.
+     */
+    public List<Species> getNewborns()
+    {
+        return newborns;
+    }
+
+    /**
+     * Move the newborns from the buffer to the end of the pool.
+     */
+    public void addNewborns()
+    {
+        ensureCapacity(size + newborns.size());
+        for(int i = 0; i < newborns.size(); i++) {
+            Species s = newborns.get(i);
+            entities[size] = s;
+            store(s, size);
+            size++;
+        }
+        newborns.clear();
+        modCount++;
+    }
+
+    /**
+     * Remove the slots from one index up to but not including another,
+     * in a single pass. Used by subList(from, to).clear().
+     * @param from The first slot to remove.
+     * @param to One past the last slot to remove.
+     */
+    protected void removeRange(int from, int to)
+    {
+        detachRange(from, to);
+        store.moveRange(to, from, size - to);
+        System.arraycopy(entities, to, entities, from, size - to);
+        int newSize = size - (to - from);
+        Arrays.fill(entities, newSize, size, null);
+        size = newSize;
+        modCount++;
+    }
+
+    /**
+     * Count the species whose flags, picked out by a mask, are as given,
+     * by looking through the flags in the store, see EntityStore.count.
+     * This must be done between steps, when every row is up to date.
+     * @param mask The flags to look at.
+     * @param value The flags wanted, among those in the mask.
+     * @return The number of species.
+     */
+    public int count(int mask, int value)
+    {
+        return store.count(size, mask, value);
+    }
+
+    /**
+     * @return The store holding the state of the species, one row per slot.
+     */
+    public EntityStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * Keep the state of a species in the row of its slot, moving it from
+     * another row if it is already in the store.
+     * @param s The species.
+     * @param index The slot the species is in.
+     */
+    private void store(Species s, int index)
+    {
+        if(s.getStore() == store) {
+            if(s.getRow() != index) {
+                store.move(s.getRow(), index);
+            }
+        }
+        else {
+            s.attach(store, index);
+        }
+    }
+
+    /**
+     * Give the species in a run of slots their state back.
+     * @param from The first slot.
+     * @param to One past the last slot.
+     */
+    private void detachRange(int from, int to)
+    {
+        for(int i = from; i < to; i++) {
+            if(entities[i].isStoredAt(store, i)) {
+                entities[i].detach();
+            }
+        }
+    }
+
+    /**
+     * Make sure the pool has room for the given number of species,
+     * at least doubling the room when it grows.
+     * @param capacity The number of species.
+     */
+    private void ensureCapacity(int capacity)
+    {
+        if(capacity > entities.length) {
+            entities = Arrays.copyOf(entities, Math.max(capacity, entities.length * 2));
+            store.ensureCapacity(entities.length);
+        }
+    }
+
+    /**
+     * Check that a slot is in use.
+     * @param index The slot.
+     */
+    private void checkIndex(int index)
+    {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+}
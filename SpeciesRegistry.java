@@ -0,0 +1,147 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hand out a small integer id for every class of participant that is
+ * placed in the field. The ids are what the field stores per cell, so
+ * scans over the field can work with primitive values rather than
+ * following a reference and asking an object for its class.
+ * Id 0 is reserved for an empty cell.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class SpeciesRegistry
+{
+    // The id stored for a cell that holds nothing.
+    public static final int EMPTY = 0;
+    // The largest id that can be handed out. Sets of species are kept as
+    // bits of a long, so there can be at most 63 species.
+    public static final int MAX_SPECIES = 63;
+
+    // The class registered under each id.
+    private static final AtomicReferenceArray<Class<? extends Species>> classes =
+        new AtomicReferenceArray<>(MAX_SPECIES + 1);
+    // The number of ids handed out so far. It is only raised once the
+    // class and its kind are recorded, so a reader never sees an id early.
+    private static volatile int count;
+    // The ids of the classes of animals, and of plants, with bit n set for id n.
+    private static volatile long animalSet, plantSet;
+    // Per-class cache of the registered id.
+    private static final ClassValue<Integer> ids = new ClassValue<Integer>() {
+        protected Integer computeValue(Class<?> type)
+        {
+            return register(type.asSubclass(Species.class));
+        }
+    };
+
+    /**
+     * Return the id of the given class, registering it if it has not been seen before.
+     * @param speciesClass The class of the participant.
+     * @return The id of the class, greater than zero.
+     */
+    public static int getId(Class<? extends Species> speciesClass)
+    {
+        return ids.get(speciesClass);
+    }
+
+    /**
+     * Return the id of the class of the given object.
+     * @param occupant The object, may be null.
+     * @return The id of the object's class, or EMPTY if the object is null.
+     * @throws IllegalArgumentException If the object is not a species.
+     */
+    public static int idOf(Object occupant)
+    {
+        if(occupant == null) {
+            return EMPTY;
+        }
+        else if(occupant instanceof Species) {
+            return ((Species) occupant).getSpeciesId();
+        }
+        else {
+            throw new IllegalArgumentException("Not a species: " + occupant);
+        }
+    }
+
+    /**
+     * Return the class registered under the given id.
+     * @param id The id.
+     * @return The class, or null if no class has the id.
+     */
+    public static Class<? extends Species> getSpeciesClass(int id)
+    {
+        if(id <= EMPTY || id > MAX_SPECIES) {
+            return null;
+        }
+        return classes.get(id);
+    }
+
+    /**
+     * @return The largest id handed out so far.
+     */
+    public static int getMaxId()
+    {
+        return count;
+    }
+
+    /**
+     * @return The ids of the classes of animals, with bit n set for id n.
+     */
+    public static long getAnimalSet()
+    {
+        return animalSet;
+    }
+
+    /**
+     * @return The ids of the classes of plants, with bit n set for id n.
+     */
+    public static long getPlantSet()
+    {
+        return plantSet;
+    }
+
+    /**
+     * @param id An id.
+     * @return true if the id is that of a class of animals.
+     */
+    public static boolean isAnimal(int id)
+    {
+        return ((animalSet >>> id) & 1) != 0;
+    }
+
+    /**
+     * @param id An id.
+     * @return true if the id is that of a class of plants.
+     */
+    public static boolean isPlant(int id)
+    {
+        return ((plantSet >>> id) & 1) != 0;
+    }
+
+    /**
+     * Give the class the next free id.
+     * @param speciesClass The class to register.
+     * @return The new id.
+     */
+    private static synchronized int register(Class<? extends Species> speciesClass)
+    {
+        for(int id = 1; id <= count; id++) {
+            if(classes.get(id) == speciesClass) {
+                return id;
+            }
+        }
+        if(count == MAX_SPECIES) {
+            throw new IllegalStateException("Too many species registered: " + speciesClass.getName());
+        }
+        int id = count + 1;
+        classes.set(id, speciesClass);
+        if(Animal.class.isAssignableFrom(speciesClass)) {
+            animalSet |= 1L << id;
+        }
+        else if(Plant.class.isAssignableFrom(speciesClass)) {
+            plantSet |= 1L << id;
+        }
+        count = id;
+        return id;
+    }
+}
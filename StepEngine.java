@@ -0,0 +1,18 @@
+import java.util.List;
+
+/**
+ * A way of letting every species in a field act once per step.
+ * The Simulator steps its species one by one unless it is given one of these.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public interface StepEngine
+{
+    /**
+     * Let every living species act once. Dead species are dropped from the
+     * list and newborn species are added to it.
+     * @param species The species in the field.
+     */
+    void step(List<Species> species);
+}
@@ -0,0 +1,231 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The ground under a field: one byte per cell saying whether it is grass,
+ * water or rock. Animals cannot move onto water or rock and plants cannot
+ * spread there.
+ *
+ * Besides the bytes, the terrain keeps one bit per cell marking the blocked
+ * cells, laid out in the same way as the rows of an OccupancyBitboard, so the
+ * field can merge them into its free-cell masks once instead of checking the
+ * terrain for each neighbour.
+ *
+ * A terrain cannot be changed once it has been made.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class Terrain
+{
+    // The kinds of ground.
+    public static final byte GRASS = 0;
+    public static final byte WATER = 1;
+    public static final byte ROCK = 2;
+
+    // The characters used for each kind of ground in a terrain file.
+    private static final char GRASS_CHAR = '.';
+    private static final char WATER_CHAR = '~';
+    private static final char ROCK_CHAR = '#';
+
+    // The number of cells per water hole, and per rock outcrop, in generated terrain.
+    private static final int CELLS_PER_WATER_HOLE = 2500;
+    private static final int CELLS_PER_ROCK = 1500;
+    // The likelihood of a row of a generated river having a ford.
+    private static final double FORD_PROBABILITY = 0.05;
+
+    // The size of the terrain.
+    private final int depth, width;
+    // The kind of ground in each cell, row by row.
+    private final byte[] cells;
+    // The number of words per row of the blocked bits.
+    private final int words;
+    // One bit per cell that cannot be entered.
+    private final long[] blocked;
+
+    /**
+     * Create a terrain of grass only.
+     * @param depth The depth of the terrain.
+     * @param width The width of the terrain.
+     */
+    public Terrain(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        cells = new byte[depth * width];
+        words = (width + 63) >>> 6;
+        blocked = new long[depth * words];
+    }
+
+    /**
+     * Read a terrain from a text file. Each line of the file is a row, with
+     * '.' for grass, '~' for water and '#' for rock. Short lines are filled
+     * out with grass.
+     * @param filename The name of the file.
+     * @return The terrain.
+     * @throws IOException If the file cannot be read or holds an unknown character.
+     */
+    public static Terrain load(String filename) throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        try(BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        int width = 0;
+        for(String line : lines) {
+            width = Math.max(width, line.length());
+        }
+        Terrain terrain = new Terrain(lines.size(), width);
+        for(int row = 0; row < lines.size(); row++) {
+            String line = lines.get(row);
+            for(int col = 0; col < line.length(); col++) {
+                switch(line.charAt(col)) {
+                    case GRASS_CHAR:
+                        break;
+                    case WATER_CHAR:
+                        terrain.set(row, col, WATER);
+                        break;
+                    case ROCK_CHAR:
+                        terrain.set(row, col, ROCK);
+                        break;
+                    default:
+                        throw new IOException(filename + ":" + (row + 1) + ": unknown terrain '"
+                                              + line.charAt(col) + "'");
+                }
+            }
+        }
+        return terrain;
+    }
+
+    /**
+     * Generate a terrain with a river running from top to bottom,
+     * a few water holes and some rock outcrops.
+     * @param depth The depth of the terrain.
+     * @param width The width of the terrain.
+     * @param rand The random number generator to use.
+     * @return The terrain.
+     */
+    public static Terrain generate(int depth, int width, Random rand)
+    {
+        Terrain terrain = new Terrain(depth, width);
+
+        // A river two cells wide that meanders down the field, with the odd ford.
+        int river = rand.nextInt(width);
+        for(int row = 0; row < depth; row++) {
+            river = Math.max(0, Math.min(width - 2, river + rand.nextInt(3) - 1));
+            if(rand.nextDouble() > FORD_PROBABILITY) {
+                terrain.fill(row, river, row, river + 1, WATER);
+            }
+        }
+
+        // Round water holes.
+        int holes = Math.max(1, depth * width / CELLS_PER_WATER_HOLE);
+        for(int i = 0; i < holes; i++) {
+            int row = rand.nextInt(depth);
+            int col = rand.nextInt(width);
+            int radius = 1 + rand.nextInt(3);
+            for(int dr = -radius; dr <= radius; dr++) {
+                for(int dc = -radius; dc <= radius; dc++) {
+                    if(dr * dr + dc * dc <= radius * radius) {
+                        terrain.fill(row + dr, col + dc, row + dr, col + dc, WATER);
+                    }
+                }
+            }
+        }
+
+        // Rock outcrops, each a short random walk.
+        int rocks = depth * width / CELLS_PER_ROCK;
+        for(int i = 0; i < rocks; i++) {
+            int row = rand.nextInt(depth);
+            int col = rand.nextInt(width);
+            int length = 5 + rand.nextInt(11);
+            for(int j = 0; j < length; j++) {
+                terrain.fill(row, col, row, col, ROCK);
+                row += rand.nextInt(3) - 1;
+                col += rand.nextInt(3) - 1;
+            }
+        }
+        return terrain;
+    }
+
+    /**
+     * @return The depth of the terrain.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the terrain.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The kind of ground in the cell, e.g. GRASS.
+     */
+    public byte getType(int row, int col)
+    {
+        return cells[row * width + col];
+    }
+
+    /**
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return true if animals and plants may be in the cell.
+     */
+    public boolean isPassable(int row, int col)
+    {
+        return cells[row * width + col] == GRASS;
+    }
+
+    /**
+     * Return the blocked cells, one bit per cell. Row r starts at word
+     * r * ((width + 63) / 64), as in OccupancyBitboard. The array must not be changed.
+     * @return The blocked bits.
+     */
+    long[] getBlocked()
+    {
+        return blocked;
+    }
+
+    /**
+     * Set the ground of a rectangle, ignoring any part outside the terrain.
+     */
+    private void fill(int top, int left, int bottom, int right, byte type)
+    {
+        for(int row = Math.max(top, 0); row <= Math.min(bottom, depth - 1); row++) {
+            for(int col = Math.max(left, 0); col <= Math.min(right, width - 1); col++) {
+                set(row, col, type);
+            }
+        }
+    }
+
+    /**
+     * Set the ground of one cell.
+     */
+    private void set(int row, int col, byte type)
+    {
+        cells[row * width + col] = type;
+        int word = row * words + (col >>> 6);
+        long bit = 1L << (col & 63);
+        if(type == GRASS) {
+            blocked[word] &= ~bit;
+        }
+        else {
+            blocked[word] |= bit;
+        }
+    }
+}
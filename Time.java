@@ -7,18 +7,35 @@
  */
 public class Time {
 
+    //Number of steps in an hour
+    public static final int STEPS_PER_HOUR = 5;
     //Number of hours that have passed in the current day
     private static int hour;
     //Number of days that have passed in the current month
     private int day;
     //Number of months the simulation has been running.
     private int month;
+    //Number of steps the simulation has been running.
+    private static long step;
 
 
     public Time()
     {
         day = month = 0;
         hour = 6;
+        step = 0;
+    }
+
+    /**
+     * Increment the number of steps by 1 to signify a step passing.
+     * Every STEPS_PER_HOUR steps an hour passes too.
+     */
+    public void incrementStep()
+    {
+        step++;
+        if(step % STEPS_PER_HOUR == 0) {
+            incrementHour();
+        }
     }
 
     /**
@@ -47,12 +64,46 @@ public class Time {
      * @return True if it is currently day time
      */
     public static boolean isDay(){
+        return isDay(hour);
+    }
+
+    /**
+     * Work out the first step after the current one in which it will be day,
+     * or night.
+     * @param day true to look for day time, false for night time.
+     * @return The step.
+     */
+    public static long nextStepWhen(boolean day)
+    {
+        long s = step;
+        int h = hour;
+        do {
+            s++;
+            if(s % STEPS_PER_HOUR == 0) {
+                h = h < 24 ? h + 1 : 0;
+            }
+        } while(isDay(h) != day);
+        return s;
+    }
+
+    /**
+     * @param hour The hour.
+     * @return True if the hour is day time
+     */
+    private static boolean isDay(int hour){
         //The day starts at sunrise (6 am) and ends at sunset(6 pm)
         return (hour>6)&&(hour<18);
     }
 
     //Getter methods
 
+    /**
+     * @return The number of steps the simulation has been running.
+     */
+    public static long getStep() {
+        return step;
+    }
+
     /**
      * @return The number of hours the simulation has been running.
      */
@@ -0,0 +1,153 @@
+/**
+ * The shape of the neighbourhood of a location, and what happens at the
+ * edges of the field. A topology is just a list of row and column offsets
+ * (one list per row parity, for hexagonal grids) and a flag saying whether
+ * the field wraps around at its edges like a torus.
+ *
+ * A topology is compiled into a NeighbourTable for a field of a given size
+ * once, when it is given to the field, so finding neighbours while the
+ * simulation runs is a matter of table lookups.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class Topology
+{
+    // The row and column offsets of the neighbours, indexed by row parity.
+    private final int[][] rowOffsets;
+    private final int[][] colOffsets;
+    // Whether the field wraps around at its edges.
+    private final boolean toroidal;
+    // The largest offset in any direction.
+    private final int reach;
+
+    /**
+     * Create a topology from neighbour offsets.
+     * @param rowOffsets The row offsets, one array per row parity (1 or 2 arrays).
+     * @param colOffsets The column offsets, matching rowOffsets.
+     * @param toroidal true if the field wraps around at its edges.
+     */
+    public Topology(int[][] rowOffsets, int[][] colOffsets, boolean toroidal)
+    {
+        if(rowOffsets.length < 1 || rowOffsets.length > 2 || rowOffsets.length != colOffsets.length) {
+            throw new IllegalArgumentException("One or two offset lists are needed");
+        }
+        this.rowOffsets = rowOffsets;
+        this.colOffsets = colOffsets;
+        this.toroidal = toroidal;
+        int maxOffset = 0;
+        for(int parity = 0; parity < rowOffsets.length; parity++) {
+            if(rowOffsets[parity].length != colOffsets[parity].length) {
+                throw new IllegalArgumentException("Row and column offsets differ in length");
+            }
+            for(int i = 0; i < rowOffsets[parity].length; i++) {
+                maxOffset = Math.max(maxOffset, Math.abs(rowOffsets[parity][i]));
+                maxOffset = Math.max(maxOffset, Math.abs(colOffsets[parity][i]));
+            }
+        }
+        reach = maxOffset;
+    }
+
+    /**
+     * The eight surrounding locations. This is the neighbourhood the
+     * simulation has always used.
+     * @param toroidal true if the field wraps around at its edges.
+     * @return The topology.
+     */
+    public static Topology moore(boolean toroidal)
+    {
+        return radius(1, toroidal);
+    }
+
+    /**
+     * Every location within the given number of steps in any direction,
+     * including diagonals, except the location itself.
+     * @param radius The radius, at least 1.
+     * @param toroidal true if the field wraps around at its edges.
+     * @return The topology.
+     */
+    public static Topology radius(int radius, boolean toroidal)
+    {
+        if(radius < 1) {
+            throw new IllegalArgumentException("Radius must be at least 1: " + radius);
+        }
+        int size = (2 * radius + 1) * (2 * radius + 1) - 1;
+        int[] rows = new int[size];
+        int[] cols = new int[size];
+        int count = 0;
+        for(int roffset = -radius; roffset <= radius; roffset++) {
+            for(int coffset = -radius; coffset <= radius; coffset++) {
+                if(roffset != 0 || coffset != 0) {
+                    rows[count] = roffset;
+                    cols[count] = coffset;
+                    count++;
+                }
+            }
+        }
+        return new Topology(new int[][] { rows }, new int[][] { cols }, toroidal);
+    }
+
+    /**
+     * The four locations above, below, left and right.
+     * @param toroidal true if the field wraps around at its edges.
+     * @return The topology.
+     */
+    public static Topology vonNeumann(boolean toroidal)
+    {
+        return new Topology(new int[][] { { -1, 0, 0, 1 } },
+                            new int[][] { { 0, -1, 1, 0 } }, toroidal);
+    }
+
+    /**
+     * The six neighbours of a hexagonal grid stored with odd rows shifted
+     * half a cell to the right. A wrapping hexagonal field needs an even depth.
+     * @param toroidal true if the field wraps around at its edges.
+     * @return The topology.
+     */
+    public static Topology hexagonal(boolean toroidal)
+    {
+        return new Topology(new int[][] { { -1, -1, 0, 0, 1, 1 }, { -1, -1, 0, 0, 1, 1 } },
+                            new int[][] { { -1, 0, -1, 1, -1, 0 }, { 0, 1, -1, 1, 0, 1 } },
+                            toroidal);
+    }
+
+    /**
+     * Compile this topology for a field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param bounded false if the field is unbounded, in which case depth and width are ignored.
+     * @return The neighbour table.
+     */
+    public NeighbourTable compile(int depth, int width, boolean bounded)
+    {
+        if(bounded && toroidal && rowOffsets.length == 2 && depth % 2 != 0) {
+            throw new IllegalArgumentException("A wrapping hexagonal field needs an even depth: " + depth);
+        }
+        return new NeighbourTable(rowOffsets, colOffsets, bounded && toroidal,
+                                  bounded ? depth : 0, bounded ? width : 0, reach);
+    }
+
+    /**
+     * @return true if the field wraps around at its edges.
+     */
+    public boolean isToroidal()
+    {
+        return toroidal;
+    }
+
+    /**
+     * @return The largest distance to a neighbour in any direction.
+     */
+    public int getReach()
+    {
+        return reach;
+    }
+
+    /**
+     * @return true if this is the eight-neighbour Moore topology, wrapping or not.
+     */
+    public boolean isMoore()
+    {
+        return reach == 1 && rowOffsets.length == 1 && rowOffsets[0].length == 8;
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Steps the species one kind at a time: first every Lion, say, then every
+ * Grass, and so on. Each kind acts in a loop of its own, so the JVM sees only
+ * animals or only plants at each call to act, and can call Animal.act or
+ * Plant.act directly instead of looking it up for every species.
+ *
+ * The order in which species act changes how they get on, so to be fair to
+ * every kind the order of the kinds is shuffled in each step, and so is the
+ * order of the species within each kind. The shuffles depend only on the
+ * seed and the step, so a run can be repeated, but the results are not the
+ * same as those of stepping the species in the order of the list.
+ *
+ * The kinds are told apart by the species ids in the pool's EntityStore,
+ * without looking at the species objects. A list that is not a SpeciesPool
+ * is stepped one by one.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class TypeBatchedStepEngine implements StepEngine
+{
+    // The rows of the pool, sorted by species id: the rows of species id n
+    // are from starts[n] up to but not including starts[n + 1].
+    private int[] order;
+    // Where the rows of each species id start in order.
+    private final int[] starts;
+    // The species ids, in the order they act in this step.
+    private final int[] kinds;
+
+    /**
+     * Create an engine that steps the species one kind at a time.
+     */
+    public TypeBatchedStepEngine()
+    {
+        order = new int[0];
+        starts = new int[SpeciesRegistry.MAX_SPECIES + 2];
+        kinds = new int[SpeciesRegistry.MAX_SPECIES + 1];
+    }
+
+    /**
+     * Let every living species act, one kind at a time. Dead species are
+     * dropped from the list and newborn species are added to the end of it.
+     * @param species The species in the field.
+     */
+    public void step(List<Species> species)
+    {
+        if(!(species instanceof SpeciesPool)) {
+            stepAll(species);
+            return;
+        }
+        SpeciesPool pool = (SpeciesPool) species;
+        EntityStore store = pool.getStore();
+        List<Species> newborns = pool.getNewborns();
+        // The species draw from the streams as they act, so all of the
+        // shuffling is done before any of them do.
+        int kindCount = sort(store, pool.size());
+        for(int k = 0; k < kindCount; k++) {
+            int id = kinds[k];
+            SpeciesParameters parameters = SpeciesParameters.get(id);
+            if(parameters != null && parameters.isPlant()) {
+                actPlants(pool, store, starts[id], starts[id + 1], newborns);
+            }
+            else {
+                actAnimals(pool, store, starts[id], starts[id + 1], newborns);
+            }
+        }
+        pool.compact();
+        pool.addNewborns();
+    }
+
+    /**
+     * Sort the rows of the living species by species id, shuffle the rows
+     * of each species id, and shuffle the order of the species ids.
+     * @param store The store.
+     * @param size The number of rows.
+     * @return The number of species ids with living species.
+     */
+    private int sort(EntityStore store, int size)
+    {
+        if(order.length < size) {
+            order = new int[Math.max(size, order.length * 2)];
+        }
+        int[] counts = new int[starts.length];
+        for(int row = 0; row < size; row++) {
+            if(store.hasFlag(row, EntityStore.ALIVE)) {
+                counts[store.getSpeciesId(row)]++;
+            }
+        }
+        int kindCount = 0;
+        int next = 0;
+        for(int id = 0; id < kinds.length; id++) {
+            starts[id] = next;
+            next += counts[id];
+            if(counts[id] > 0) {
+                kinds[kindCount++] = id;
+            }
+        }
+        starts[kinds.length] = next;
+        // The counts now mark where the next row of each species id goes.
+        System.arraycopy(starts, 0, counts, 0, counts.length);
+        for(int row = 0; row < size; row++) {
+            if(store.hasFlag(row, EntityStore.ALIVE)) {
+                order[counts[store.getSpeciesId(row)]++] = row;
+            }
+        }
+
+        for(int k = 0; k < kindCount; k++) {
+            int id = kinds[k];
+            shuffle(order, starts[id], starts[id + 1] - starts[id], Randomizer.getStream(id, Randomizer.ORDER));
+        }
+        shuffle(kinds, 0, kindCount, Randomizer.getStream(0, Randomizer.ORDER));
+        return kindCount;
+    }
+
+    /**
+     * Let the plants in some of the sorted rows act, if they are still alive.
+     * @param pool The pool.
+     * @param store The pool's store.
+     * @param from The first of the sorted rows.
+     * @param to One past the last of the sorted rows.
+     * @param newborns The list to add newborn species to.
+     */
+    private void actPlants(SpeciesPool pool, EntityStore store, int from, int to, List<Species> newborns)
+    {
+        for(int i = from; i < to; i++) {
+            int row = order[i];
+            if(store.hasFlag(row, EntityStore.ALIVE)) {
+                ((Plant) pool.get(row)).act(newborns);
+            }
+        }
+    }
+
+    /**
+     * Let the animals in some of the sorted rows act, if they are still alive.
+     * @param pool The pool.
+     * @param store The pool's store.
+     * @param from The first of the sorted rows.
+     * @param to One past the last of the sorted rows.
+     * @param newborns The list to add newborn species to.
+     */
+    private void actAnimals(SpeciesPool pool, EntityStore store, int from, int to, List<Species> newborns)
+    {
+        for(int i = from; i < to; i++) {
+            int row = order[i];
+            if(store.hasFlag(row, EntityStore.ALIVE)) {
+                ((Animal) pool.get(row)).act(newborns);
+            }
+        }
+    }
+
+    /**
+     * Shuffle part of an array.
+     * @param values The array.
+     * @param from The first index to shuffle.
+     * @param length The number of values to shuffle.
+     * @param rand The random numbers to shuffle with.
+     */
+    private static void shuffle(int[] values, int from, int length, Random rand)
+    {
+        for(int i = length; i > 1; i--) {
+            int j = from + rand.nextInt(i);
+            int value = values[from + i - 1];
+            values[from + i - 1] = values[j];
+            values[j] = value;
+        }
+    }
+
+    /**
+     * Let every living species in a plain list act, one by one.
+     * @param species The species in the field.
+     */
+    private static void stepAll(List<Species> species)
+    {
+        List<Species> born = new ArrayList<>();
+        for(int i = 0; i < species.size(); i++) {
+            Species s = species.get(i);
+            if(s.isAlive()) {
+                s.act(born);
+            }
+        }
+        int kept = 0;
+        for(int i = 0; i < species.size(); i++) {
+            Species s = species.get(i);
+            if(s.isAlive()) {
+                species.set(kept++, s);
+            }
+        }
+        species.subList(kept, species.size()).clear();
+        species.addAll(born);
+    }
+}
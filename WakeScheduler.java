@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The resting species of a simulation, such as sleeping animals, each waiting
+ * for the step in which it must act again. They are kept in a timing wheel: a
+ * ring of slots, one per step, where a species due in step s waits in slot s
+ * modulo the number of slots. Each step only the slot for that step is looked
+ * at, so resting species cost nothing in the steps they rest through.
+ *
+ * A species due more than a full turn of the wheel away stays in its slot
+ * while the wheel turns past it. A species that is woken early is put in a
+ * second slot, and the entry left in the first is ignored when that slot
+ * comes round, as is the entry of a species that has died.
+ *
+ * @author Colin Billhardt and Thom Treebus
+ * @version 2021.03.03
+ */
+public class WakeScheduler
+{
+    // The number of slots in the wheel, a power of two.
+    private static final int SLOTS = 256;
+
+    // The species waiting in each slot.
+    private final List<List<Species>> wheel;
+
+    /**
+     * Create an empty scheduler.
+     */
+    public WakeScheduler()
+    {
+        wheel = new ArrayList<>();
+        for(int slot = 0; slot < SLOTS; slot++) {
+            wheel.add(new ArrayList<Species>());
+        }
+    }
+
+    /**
+     * Let a species rest until the given step.
+     * @param s The species.
+     * @param step The step in which the species must act again.
+     */
+    public void schedule(Species s, long step)
+    {
+        s.setWakeStep(this, step);
+        wheel.get(slot(step)).add(s);
+    }
+
+    /**
+     * Wake the species due in a step.
+     * @param step The step.
+     * @param awake The list to add the woken species to.
+     */
+    public void wakeDue(long step, List<Species> awake)
+    {
+        List<Species> due = wheel.get(slot(step));
+        int kept = 0;
+        for(int i = 0; i < due.size(); i++) {
+            Species s = due.get(i);
+            if(!s.isAlive()) {
+                continue;
+            }
+            long wakeStep = s.getWakeStep();
+            if(wakeStep == step) {
+                s.wakeUp(step);
+                awake.add(s);
+            }
+            else if(wakeStep > step && slot(wakeStep) == slot(step)) {
+                // Due on a later turn of the wheel.
+                due.set(kept++, s);
+            }
+            // Otherwise the species was woken early and this entry is stale.
+        }
+        due.subList(kept, due.size()).clear();
+    }
+
+    /**
+     * Wake every resting species, to act in the step after the current one,
+     * and empty the scheduler.
+     * @param awake The list to add the woken species to.
+     */
+    public void wakeAll(List<Species> awake)
+    {
+        long next = Time.getStep() + 1;
+        for(List<Species> slot : wheel) {
+            for(Species s : slot) {
+                if(s.isAlive() && s.getWakeStep() != Species.ACTIVE) {
+                    s.wakeUp(next);
+                    awake.add(s);
+                }
+            }
+            slot.clear();
+        }
+    }
+
+    /**
+     * Count the resting species whose flags, picked out by a mask, are as
+     * given, see EntityStore.count.
+     * @param mask The flags to look at.
+     * @param value The flags wanted, among those in the mask.
+     * @return The number of resting species.
+     */
+    public int count(int mask, int value)
+    {
+        // A species may have a stale entry as well as the one it is due in.
+        Set<Species> counted = Collections.newSetFromMap(new IdentityHashMap<Species, Boolean>());
+        for(int i = 0; i < SLOTS; i++) {
+            for(Species s : wheel.get(i)) {
+                long wakeStep = s.getWakeStep();
+                if(wakeStep != Species.ACTIVE && slot(wakeStep) == i && (s.getFlags() & mask) == value) {
+                    counted.add(s);
+                }
+            }
+        }
+        return counted.size();
+    }
+
+    /**
+     * Forget every resting species, without waking them.
+     */
+    public void clear()
+    {
+        for(List<Species> slot : wheel) {
+            slot.clear();
+        }
+    }
+
+    /**
+     * @param step A step.
+     * @return The slot of the wheel for the step.
+     */
+    private static int slot(long step)
+    {
+        return (int) (step & (SLOTS - 1));
+    }
+}
@@ -14,9 +14,8 @@ public class Weather {
     private boolean raining;
     private boolean fog;
     private boolean lightning;
-
-    //A shared random number generator to control the weather.
-    private static final Random rand = Randomizer.getRandom();
+    //The number of steps in which it has rained.
+    private long rainySteps;
 
     /**
      * Create a weather object and set all the weather types to false.
@@ -35,11 +34,30 @@ public class Weather {
      */
     public void updateWeather()
     {
+        Random rand = Randomizer.getStream(0, Randomizer.WEATHER);
         raining = rand.nextBoolean();
         fog = rand.nextBoolean();
         lightning = rand.nextBoolean();
     }
 
+    /**
+     * Count a step of the simulation, noting whether it rains in it.
+     */
+    public void countStep()
+    {
+        if(raining) {
+            rainySteps++;
+        }
+    }
+
+    /**
+     * @return The number of steps so far in which it has rained.
+     */
+    public long getRainySteps()
+    {
+        return rainySteps;
+    }
+
     /**
      * Check what the weather status is and return a string
      * @return A string that describes the weather status
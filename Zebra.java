@@ -46,12 +46,12 @@ public class Zebra extends Prey
     {
         super(field, location);
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE/3);
-            foodLevel = rand.nextInt(INITIAL_FOOD_LEVEL);
+            setAge(rand.nextInt(getParameters().getMaxAge()/3));
+            setFoodLevel(rand.nextInt(getParameters().getInitialFoodLevel()));
         }
         else{
-            age = 0;
-            foodLevel = INITIAL_FOOD_LEVEL;
+            setAge(0);
+            setFoodLevel(getParameters().getInitialFoodLevel());
         }
     }
 